@@ -0,0 +1,248 @@
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures the cost of each stage of the parse and schedule pipeline:
+ * parsing the channel list, parsing a schedule, building the time sorted
+ * schedule, selecting the twelve hour window, joining three days into a
+ * channel and building the rows of the schedule table. Every stage is run
+ * against the hand-written sample fixtures in bench/fixtures and against
+ * synthetic schedules of 10 000 and 100 000 episodes.
+ *
+ * For every stage the throughput, the number of bytes allocated per
+ * operation and the 50th, 99th and maximum latency are reported. Compile
+ * and run from the project directory with
+ *
+ *     javac -d out src/*.java bench/*.java
+ *     java -cp out ParseBenchmark [seconds per stage]
+ */
+public class ParseBenchmark {
+
+    private static final long DAY = 24*60*60*1000L;
+    private static final int VISIBLE_ROWS = 30;
+
+    private final long nanosPerStage;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+                    ManagementFactory.getThreadMXBean();
+
+    /**
+     * Constructor of the class.
+     *
+     * @param secondsPerStage the time each stage is measured.
+     */
+    public ParseBenchmark(double secondsPerStage){
+        this.nanosPerStage = (long) (secondsPerStage*1e9);
+    }
+
+    /**
+     * Runs all benchmarks.
+     *
+     * @param args optionally the number of seconds each stage is measured.
+     * @throws Exception if a fixture could not be read or parsed.
+     */
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+        ParseBenchmark benchmark = new ParseBenchmark(seconds);
+
+        File fixtures = new File("bench"+File.separator+"fixtures");
+        byte[] channels = Files.readAllBytes(
+                new File(fixtures, "channels.xml").toPath());
+        byte[] schedule = Files.readAllBytes(
+                new File(fixtures, "scheduledepisodes.xml").toPath());
+
+        SyntheticSchedules synthetic = new SyntheticSchedules(42);
+        long start = System.currentTimeMillis() - DAY;
+
+        System.out.printf(Locale.ROOT, "%-32s %12s %12s %10s %10s %10s%n",
+                "stage", "ops/s", "bytes/op", "p50 us", "p99 us", "max us");
+        benchmark.channelStages("sample", channels);
+        benchmark.scheduleStages("sample", schedule);
+        benchmark.channelStages("synthetic 50", synthetic.channels(50));
+        benchmark.scheduleStages("synthetic 10k",
+                synthetic.schedule(132, start, 10000));
+        benchmark.scheduleStages("synthetic 100k",
+                synthetic.schedule(132, start, 100000));
+    }
+
+    /**
+     * Measures the stages working on a channel list.
+     *
+     * @param name the name of the fixture.
+     * @param xml the channel list.
+     * @throws Exception if the channel list could not be parsed.
+     */
+    private void channelStages(String name, byte[] xml) throws Exception {
+        SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+        measure(name+" ChannelHandler", () -> {
+            parser.reset();
+            ChannelHandler handler = new ChannelHandler();
+            parser.parse(new ByteArrayInputStream(xml), handler);
+            return handler.getChannelList();
+        });
+    }
+
+    /**
+     * Measures the stages working on a schedule.
+     *
+     * @param name the name of the fixture.
+     * @param xml the schedule.
+     * @throws Exception if the schedule could not be parsed.
+     */
+    private void scheduleStages(String name, byte[] xml) throws Exception {
+        SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+        ProgramHandler handler = new ProgramHandler();
+
+        measure(name+" ProgramHandler", () -> {
+            parser.reset();
+            parser.parse(new ByteArrayInputStream(xml), handler);
+            return handler.getSchedule();
+        });
+
+        parser.reset();
+        parser.parse(new ByteArrayInputStream(xml), handler);
+        ArrayList<Program> programs = handler.getSchedule();
+        Schedule schedule = new Schedule(programs);
+
+        measure(name+" new Schedule", () -> new Schedule(programs));
+        measure(name+" getShortSchedule", schedule::getShortSchedule);
+        measure(name+" join three days", () -> {
+            Channel channel = new Channel();
+            channel.setDaySchedule("yesterday", schedule);
+            channel.setDaySchedule("today", schedule);
+            channel.setDaySchedule("tomorrow", schedule);
+            channel.rebuildSchedule();
+            return channel.getLoadedSchedule();
+        });
+        measure(name+" schedule table model", () ->
+                visibleRows(schedule));
+    }
+
+    /**
+     * Fills the schedule table model in the same way as the controller
+     * does and reads the cells of the rows a table shows at first.
+     *
+     * @param schedule the schedule to show.
+     * @return the model.
+     */
+    private static ScheduleTableModel visibleRows(Schedule schedule){
+        Channel channel = new Channel();
+        ScheduleTableModel model = new ScheduleTableModel();
+        model.setSchedule(channel, schedule, schedule.getShortScheduleRows());
+
+        for (int row = 0; row < Math.min(VISIBLE_ROWS, model.getRowCount());
+             row++){
+            for (int column = 0; column < model.getColumnCount(); column++){
+                model.getValueAt(row, column);
+            }
+        }
+
+        return model;
+    }
+
+    /**
+     * Runs a stage repeatedly, first to warm up and then to measure it, and
+     * prints the result.
+     *
+     * @param name the name of the stage.
+     * @param stage the stage.
+     * @throws Exception if the stage fails.
+     */
+    private void measure(String name, Stage stage) throws Exception {
+        run(stage, nanosPerStage/2, null);
+
+        long[] latencies = new long[1024];
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        int operations = run(stage, nanosPerStage, latencies);
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = threads.getThreadAllocatedBytes(threadId) -
+                allocatedBefore;
+
+        long[] sorted = Arrays.copyOf(latencies,
+                Math.min(operations, latencies.length));
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT,
+                "%-32s %12.1f %12d %10.1f %10.1f %10.1f%n", name,
+                operations/(elapsed/1e9), allocated/operations,
+                percentile(sorted, 0.50)/1e3, percentile(sorted, 0.99)/1e3,
+                sorted[sorted.length - 1]/1e3);
+    }
+
+    /**
+     * Runs a stage until a time has passed.
+     *
+     * @param stage the stage.
+     * @param nanos the time to run in nanoseconds.
+     * @param latencies a reservoir of sampled latencies, or null to not
+     *                  sample latencies.
+     * @return the number of times the stage was run.
+     * @throws Exception if the stage fails.
+     */
+    private int run(Stage stage, long nanos, long[] latencies)
+            throws Exception {
+        long end = System.nanoTime() + nanos;
+        int operations = 0;
+        Object sink = null;
+        long now;
+        do {
+            long before = System.nanoTime();
+            sink = stage.run();
+            now = System.nanoTime();
+            if (latencies != null){
+                if (operations < latencies.length){
+                    latencies[operations] = now - before;
+                }
+                else {
+                    int slot = ThreadLocalRandom.current()
+                            .nextInt(operations + 1);
+                    if (slot < latencies.length){
+                        latencies[slot] = now - before;
+                    }
+                }
+            }
+            operations++;
+        } while (now < end);
+
+        if (sink == null){
+            System.err.println("Stage returned no result");
+        }
+        return operations;
+    }
+
+    /**
+     * Returns a percentile of sorted values.
+     *
+     * @param sorted the sorted values.
+     * @param percentile the percentile between 0 and 1.
+     * @return the value.
+     */
+    private static long percentile(long[] sorted, double percentile){
+        int index = (int) Math.ceil(percentile*sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * A benchmarked stage of the pipeline.
+     */
+    private interface Stage {
+
+        /**
+         * Runs the stage once.
+         *
+         * @return the result of the stage, kept to prevent the work from
+         *         being optimized away.
+         * @throws Exception if the stage fails.
+         */
+        Object run() throws Exception;
+    }
+}
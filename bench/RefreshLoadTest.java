@@ -0,0 +1,88 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures the time of complete refreshes of all channels against a local
+ * StubApiServer. The first refresh starts with an empty response cache, the
+ * following ones revalidate the cached responses. Takes the options of the
+ * StubApiServer and
+ *
+ *     --refreshes    the number of refreshes to run (10)
+ *     --parallelism  the number of concurrent schedule requests (8)
+ */
+public class RefreshLoadTest {
+
+    /**
+     * Runs the refreshes and prints the time of each and a summary.
+     *
+     * @param args the options, see the class description.
+     * @throws IOException if the server or cache could not be created.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = StubApiServer.parseOptions(args);
+        if (!options.containsKey("port")){
+            options.put("port", "0");
+        }
+        int refreshes = Integer.parseInt(
+                options.getOrDefault("refreshes", "10"));
+        int parallelism = Integer.parseInt(
+                options.getOrDefault("parallelism", "8"));
+
+        File cache = Files.createTempDirectory("radioinfo-cache").toFile();
+        System.setProperty("radioinfo.cache", cache.getPath());
+
+        StubApiServer server = new StubApiServer(options);
+        server.start();
+        try {
+            XMLParserSAX parser = new XMLParserSAX(parallelism,
+                    server.getBaseURL());
+            long[] times = new long[refreshes];
+            for (int i = 0; i < refreshes; i++){
+                long start = System.nanoTime();
+                ArrayList<Channel> channels = parser.getChannels();
+                times[i] = System.nanoTime() - start;
+
+                int programs = 0;
+                if (channels != null){
+                    for (Channel channel: channels){
+                        programs += channel.getLoadedSchedule().size();
+                    }
+                }
+                System.out.printf(Locale.ROOT,
+                        "refresh %3d %10.1f ms %5d channels %7d programs%n",
+                        i + 1, times[i]/1e6,
+                        channels != null ? channels.size() : 0, programs);
+            }
+
+            Arrays.sort(times);
+            System.out.printf(Locale.ROOT, "p50 %.1f ms, p90 %.1f ms, " +
+                            "p99 %.1f ms, max %.1f ms%n",
+                    times[percentile(refreshes, 0.50)]/1e6,
+                    times[percentile(refreshes, 0.90)]/1e6,
+                    times[percentile(refreshes, 0.99)]/1e6,
+                    times[refreshes - 1]/1e6);
+            System.out.printf("%d requests, %d not modified, %d failed%n",
+                    server.getRequests(), server.getNotModified(),
+                    server.getErrors());
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Returns the index of a percentile in a sorted array.
+     *
+     * @param length the length of the array.
+     * @param percentile the percentile between 0 and 1.
+     * @return the index.
+     */
+    private static int percentile(int length, double percentile){
+        return Math.max(0, Math.min(length - 1,
+                (int) Math.ceil(percentile*length) - 1));
+    }
+}
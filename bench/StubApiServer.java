@@ -0,0 +1,341 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the channels and scheduledepisodes endpoints of
+ * Sveriges Radios open API, used to measure refreshes offline and
+ * reproducibly. Responses are either hand-written sample fixtures in the
+ * format of the API or synthetic schedules, and every request can be
+ * delayed, slowed down or failed.
+ * Responses carry an ETag and conditional requests are answered with 304
+ * Not Modified, like the real API. Bodies are sent gzip compressed to
+ * clients that accept it.
+ *
+ * Start it from the project directory with
+ *
+ *     java -cp out StubApiServer --port 8080 --channels 50 --latency 100
+ *
+ * and point the application at it with
+ * -Dradioinfo.api=http://localhost:8080/api/v2. The options are
+ *
+ *     --port         the port to listen on (8080)
+ *     --channels     the number of synthetic channels (50)
+ *     --latency      the delay of every response in milliseconds (0)
+ *     --jitter       the largest random extra delay in milliseconds (0)
+ *     --error-rate   the share of requests answered with 503 (0)
+ *     --bytes-per-second  the rate bodies are sent at, 0 for no limit (0)
+ *     --samples      serve the sample fixtures in this directory, such as
+ *                    bench/fixtures, instead of synthetic data
+ */
+public class StubApiServer {
+
+    private static final ZoneId SWEDISH_TIME = ZoneId.of("Europe/Stockholm");
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+    private final int channels;
+    private final long latency;
+    private final long jitter;
+    private final double errorRate;
+    private final long bytesPerSecond;
+    private final File samples;
+
+    private final HttpServer server;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Constructor of the class.
+     *
+     * @param options the options, see the class description.
+     * @throws IOException if the server could not be created.
+     */
+    public StubApiServer(Map<String, String> options) throws IOException {
+        channels = Integer.parseInt(options.getOrDefault("channels", "50"));
+        latency = Long.parseLong(options.getOrDefault("latency", "0"));
+        jitter = Long.parseLong(options.getOrDefault("jitter", "0"));
+        errorRate = Double.parseDouble(
+                options.getOrDefault("error-rate", "0"));
+        bytesPerSecond = Long.parseLong(
+                options.getOrDefault("bytes-per-second", "0"));
+        samples = options.containsKey("samples") ?
+                new File(options.get("samples")) : null;
+
+        int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+        server = HttpServer.create(new InetSocketAddress("localhost", port),
+                0);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "StubApiServer");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/api/v2/channels", this::channels);
+        server.createContext("/api/v2/scheduledepisodes", this::schedule);
+    }
+
+    /**
+     * Starts the server with the options given on the command line.
+     *
+     * @param args the options, see the class description.
+     * @throws IOException if the server could not be started.
+     */
+    public static void main(String[] args) throws IOException {
+        StubApiServer server = new StubApiServer(parseOptions(args));
+        server.start();
+        System.out.println("Serving "+server.getBaseURL());
+    }
+
+    /**
+     * Parses options given as "--name value" pairs.
+     *
+     * @param args the arguments.
+     * @return the options by name.
+     */
+    public static Map<String, String> parseOptions(String[] args){
+        HashMap<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2){
+            if (!args[i].startsWith("--")){
+                throw new IllegalArgumentException("Expected an option but " +
+                        "got "+args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start(){
+        server.start();
+    }
+
+    /**
+     * Stops serving requests.
+     */
+    public void stop(){
+        server.stop(0);
+    }
+
+    /**
+     * Returns the URL to use as the API URL of the application.
+     *
+     * @return the URL.
+     */
+    public String getBaseURL(){
+        return "http://localhost:"+server.getAddress().getPort()+"/api/v2";
+    }
+
+    /**
+     * Returns the number of requests served so far.
+     *
+     * @return the number of requests.
+     */
+    public long getRequests(){
+        return requests.get();
+    }
+
+    /**
+     * Returns the number of requests answered with 304 Not Modified.
+     *
+     * @return the number of requests.
+     */
+    public long getNotModified(){
+        return notModified.get();
+    }
+
+    /**
+     * Returns the number of requests failed on purpose.
+     *
+     * @return the number of requests.
+     */
+    public long getErrors(){
+        return errors.get();
+    }
+
+    /**
+     * Answers a request for the channel list.
+     *
+     * @param exchange the request.
+     * @throws IOException if the response could not be sent.
+     */
+    private void channels(HttpExchange exchange) throws IOException {
+        byte[] body = samples != null ?
+                Files.readAllBytes(new File(samples, "channels.xml")
+                        .toPath()) :
+                new SyntheticSchedules(channels).channels(channels);
+        respond(exchange, body);
+    }
+
+    /**
+     * Answers a request for the schedule of a date, or of the range of dates
+     * given by fromdate and todate, both included. The synthetic schedule
+     * of a channel and dates is the same for every request.
+     *
+     * @param exchange the request.
+     * @throws IOException if the response could not be sent.
+     */
+    private void schedule(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI());
+        int channelId;
+        LocalDate date;
+        LocalDate toDate;
+        try {
+            channelId = Integer.parseInt(query.get("channelid"));
+            if (query.containsKey("fromdate")){
+                date = LocalDate.parse(query.get("fromdate"), DATE_FORMAT);
+                toDate = LocalDate.parse(query.getOrDefault("todate",
+                        query.get("fromdate")), DATE_FORMAT);
+            }
+            else {
+                date = query.containsKey("date") ?
+                        LocalDate.parse(query.get("date"), DATE_FORMAT) :
+                        LocalDate.now(SWEDISH_TIME);
+                toDate = date;
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body;
+        if (samples != null){
+            body = Files.readAllBytes(new File(samples,
+                    "scheduledepisodes.xml").toPath());
+        }
+        else {
+            long start = date.atStartOfDay(SWEDISH_TIME)
+                    .toInstant().toEpochMilli();
+            long end = toDate.plusDays(1)
+                    .atStartOfDay(SWEDISH_TIME)
+                    .toInstant().toEpochMilli();
+            body = new SyntheticSchedules(31L*channelId + date.toEpochDay())
+                    .schedule(channelId, start, end);
+        }
+        respond(exchange, body);
+    }
+
+    /**
+     * Sends a response after the configured delay, failing it, answering
+     * 304 Not Modified or sending the body at the configured rate.
+     *
+     * @param exchange the request.
+     * @param body the body to send.
+     * @throws IOException if the response could not be sent.
+     */
+    private void respond(HttpExchange exchange, byte[] body)
+            throws IOException {
+        requests.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            long delay = latency + (jitter > 0 ? random.nextLong(jitter + 1)
+                    : 0);
+            if (delay > 0){
+                Thread.sleep(delay);
+            }
+
+            if (random.nextDouble() < errorRate){
+                errors.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            String etag = "\""+Integer.toHexString(
+                    Arrays.hashCode(body))+"\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders()
+                    .getFirst("If-None-Match"))){
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type",
+                    "text/xml; charset=utf-8");
+            String accepted = exchange.getRequestHeaders()
+                    .getFirst("Accept-Encoding");
+            if (accepted != null && accepted.contains("gzip")){
+                body = gzip(body);
+                exchange.getResponseHeaders().set("Content-Encoding",
+                        "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()){
+                if (bytesPerSecond <= 0){
+                    output.write(body);
+                    return;
+                }
+                int chunk = (int) Math.max(1, Math.min(body.length,
+                        bytesPerSecond/10));
+                for (int offset = 0; offset < body.length; offset += chunk){
+                    output.write(body, offset,
+                            Math.min(chunk, body.length - offset));
+                    output.flush();
+                    Thread.sleep(1000L*chunk/bytesPerSecond);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Compresses a response body with gzip.
+     *
+     * @param body the body.
+     * @return the compressed body.
+     * @throws IOException if the body could not be compressed.
+     */
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)){
+            output.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Parses the query parameters of a request.
+     *
+     * @param uri the request URI.
+     * @return the parameters by name.
+     */
+    private static Map<String, String> parseQuery(URI uri){
+        HashMap<String, String> parameters = new HashMap<>();
+        String query = uri.getQuery();
+        if (query == null){
+            return parameters;
+        }
+        for (String parameter: query.split("&")){
+            int separator = parameter.indexOf('=');
+            if (separator > 0){
+                parameters.put(parameter.substring(0, separator),
+                        parameter.substring(separator + 1));
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,157 @@
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Random;
+
+/**
+ * Generates channel lists and schedules in the XML format of Sveriges Radios
+ * open API. The generated data is deterministic for a given seed, so that
+ * benchmark runs can be compared with each other.
+ */
+public class SyntheticSchedules {
+
+    private static final String[] TITLES = {"Ekot", "Studio Ett",
+            "Vetenskapsradion", "Kulturnytt", "Morgonpasset i P3", "Konflikt",
+            "Sommar i P1", "P4 Extra", "Musikguiden", "Godmorgon, världen!"};
+    private static final String[] WORDS = {"nyheter", "samtal", "musik",
+            "reportage", "kultur", "vetenskap", "sport", "väder", "trafik",
+            "intervjuer", "debatt", "världen", "Sverige", "lyssnarna"};
+
+    private final Random random;
+
+    /**
+     * Constructor of the class.
+     *
+     * @param seed the seed of the generated data.
+     */
+    public SyntheticSchedules(long seed){
+        random = new Random(seed);
+    }
+
+    /**
+     * Generates a channel list.
+     *
+     * @param channels the number of channels.
+     * @return the channel list as UTF-8 encoded XML.
+     */
+    public byte[] channels(int channels){
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<sr>\n")
+                .append("  <channels>\n");
+        for (int i = 0; i < channels; i++){
+            int id = 100 + i;
+            xml.append("    <channel id=\"").append(id)
+                    .append("\" name=\"P").append(id).append("\">\n")
+                    .append("      <image>https://static-cdn.sr.se/images/")
+                    .append(id).append(".jpg</image>\n")
+                    .append("      <color>31a1bd</color>\n")
+                    .append("      <tagline>").append(sentence(8))
+                    .append("</tagline>\n")
+                    .append("      <siteurl>https://sverigesradio.se/p")
+                    .append(id).append("</siteurl>\n")
+                    .append("      <scheduleurl>https://api.sr.se/v2/")
+                    .append("scheduledepisodes?channelid=").append(id)
+                    .append("</scheduleurl>\n")
+                    .append("      <channeltype>")
+                    .append(i < 4 ? "Rikskanal" : "Lokal kanal")
+                    .append("</channeltype>\n")
+                    .append("    </channel>\n");
+        }
+        xml.append("  </channels>\n</sr>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates a schedule of back to back episodes.
+     *
+     * @param channelId the id of the channel.
+     * @param start the start time of the first episode in milliseconds
+     *              since the epoch.
+     * @param episodes the number of episodes.
+     * @return the schedule as UTF-8 encoded XML.
+     */
+    public byte[] schedule(int channelId, long start, int episodes){
+        return schedule(channelId, start, Long.MAX_VALUE, episodes);
+    }
+
+    /**
+     * Generates a schedule of back to back episodes covering a time window.
+     *
+     * @param channelId the id of the channel.
+     * @param start the start time of the first episode in milliseconds
+     *              since the epoch.
+     * @param end the time after which no episode starts.
+     * @return the schedule as UTF-8 encoded XML.
+     */
+    public byte[] schedule(int channelId, long start, long end){
+        return schedule(channelId, start, end, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Generates a schedule of back to back episodes.
+     *
+     * @param channelId the id of the channel.
+     * @param start the start time of the first episode in milliseconds
+     *              since the epoch.
+     * @param last the time after which no episode starts.
+     * @param episodes the largest number of episodes.
+     * @return the schedule as UTF-8 encoded XML.
+     */
+    private byte[] schedule(int channelId, long start, long last,
+                            int episodes){
+        StringBuilder xml = new StringBuilder(Math.min(episodes, 1000)*700);
+        xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<sr>\n")
+                .append("  <schedule>\n");
+        long time = start;
+        for (int i = 0; i < episodes && time < last; i++){
+            int series = random.nextInt(TITLES.length);
+            long end = time + (5 + random.nextInt(115))*60*1000L;
+            xml.append("    <scheduledepisode>\n")
+                    .append("      <episodeid>")
+                    .append(channelId*1000000 + (time/60000)%1000000)
+                    .append("</episodeid>\n")
+                    .append("      <title>").append(TITLES[series])
+                    .append("</title>\n");
+            if (random.nextInt(3) == 0){
+                xml.append("      <subtitle>").append(sentence(3))
+                        .append("</subtitle>\n");
+            }
+            xml.append("      <description>").append(sentence(20))
+                    .append("</description>\n")
+                    .append("      <starttimeutc>")
+                    .append(Instant.ofEpochMilli(time))
+                    .append("</starttimeutc>\n")
+                    .append("      <endtimeutc>")
+                    .append(Instant.ofEpochMilli(end))
+                    .append("</endtimeutc>\n")
+                    .append("      <program id=\"").append(4000 + series)
+                    .append("\" name=\"").append(TITLES[series])
+                    .append("\" />\n")
+                    .append("      <channel id=\"").append(channelId)
+                    .append("\" name=\"P").append(channelId).append("\" />\n")
+                    .append("      <imageurl>https://static-cdn.sr.se/")
+                    .append("images/").append(4000 + series)
+                    .append(".jpg</imageurl>\n")
+                    .append("    </scheduledepisode>\n");
+            time = end;
+        }
+        xml.append("  </schedule>\n</sr>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates a sentence of random words.
+     *
+     * @param words the number of words.
+     * @return the sentence.
+     */
+    private String sentence(int words){
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++){
+            if (i > 0){
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.append('.').toString();
+    }
+}
@@ -1,4 +1,12 @@
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Class representing a channel from Sveriges Radios open API for radio channels
@@ -15,28 +23,212 @@ public class Channel {
     private String siteURL;
     private String type;
     private String scheduleURL;
-    private ArrayList<Program> schedule;
+    private volatile Schedule schedule = Schedule.EMPTY;
+
+    private volatile ScheduleLoader loader;
+    private volatile boolean stale;
+
+    private final TreeMap<String, Schedule> days = new TreeMap<>();
+    private final HashMap<String, Long> dayUpdated = new HashMap<>();
 
     /**
      * Sets the schedule of the channel.
      *
      * @param schedule the schedule.
      */
-    public void setSchedule(ArrayList<Program> schedule){
+    public void setSchedule(Schedule schedule){
         if (schedule != null) {
             this.schedule = schedule;
         }
     }
 
     /**
-     * Returns the schedule of the channel.
+     * Sets the complete schedule of one day. The schedule returned by
+     * getLoadedSchedule() is not changed until rebuildSchedule() is called.
+     *
+     * @param date the date in the format "yyyy/mm/dd".
+     * @param daySchedule the schedule of the day.
+     */
+    public void setDaySchedule(String date, Schedule daySchedule){
+        setDaySchedule(date, daySchedule, System.currentTimeMillis());
+    }
+
+    /**
+     * Sets the complete schedule of one day, fetched at a given time.
+     *
+     * @param date the date in the format "yyyy/mm/dd".
+     * @param daySchedule the schedule of the day.
+     * @param updated the time the schedule was fetched in milliseconds.
+     */
+    public synchronized void setDaySchedule(String date,
+                                            Schedule daySchedule,
+                                            long updated){
+        days.put(date, daySchedule);
+        dayUpdated.put(date, updated);
+    }
+
+    /**
+     * Sets the complete schedules of several days from one schedule
+     * covering all of them. Every program is set in the day it starts on,
+     * so a program running over midnight is only in one day, and programs
+     * starting outside the days are dropped. The schedule returned by
+     * getLoadedSchedule() is not changed until rebuildSchedule() is called.
+     *
+     * @param dates the dates in the format "yyyy/mm/dd".
+     * @param schedule the schedule of all the days.
+     */
+    public void setDaySchedules(List<String> dates, Schedule schedule){
+        setDaySchedules(dates, schedule, Collections.emptySet());
+    }
+
+    /**
+     * Sets the complete schedules of several days from one schedule
+     * covering all of them, as setDaySchedules(List, Schedule) does. The
+     * days in fresh get their new schedules but keep the time they were
+     * last set, so that they expire when they would have if they had not
+     * been fetched.
+     *
+     * @param dates the dates in the format "yyyy/mm/dd".
+     * @param schedule the schedule of all the days.
+     * @param fresh the dates that keep the time they were last set.
+     */
+    public synchronized void setDaySchedules(List<String> dates,
+                                             Schedule schedule,
+                                             Set<String> fresh){
+        long updated = System.currentTimeMillis();
+        for (String date: dates){
+            setDaySchedule(date, schedule.startingBetween(
+                    XMLParserSAX.getStartOfDay(date, 0),
+                    XMLParserSAX.getStartOfDay(date, 1)),
+                    fresh.contains(date) ? getDayUpdated(date) : updated);
+        }
+    }
+
+    /**
+     * Returns the complete schedules of all loaded days.
+     *
+     * @return the schedules by date, in date order.
+     */
+    public synchronized TreeMap<String, Schedule> getDays(){
+        return new TreeMap<>(days);
+    }
+
+    /**
+     * Returns the time the schedule of a day was last set.
+     *
+     * @param date the date in the format "yyyy/mm/dd".
+     * @return the time in milliseconds, or 0 if the day has never been set.
+     */
+    public synchronized long getDayUpdated(String date){
+        Long updated = dayUpdated.get(date);
+        return updated != null ? updated : 0;
+    }
+
+    /**
+     * Removes the schedules of all days but the given ones, and copies the
+     * kept days that use an older generation of the shared string table
+     * into the current one, so that the old table can be freed.
+     *
+     * @param dates the dates to keep.
+     * @return true if any day was removed or copied.
+     */
+    public synchronized boolean retainDays(Collection<String> dates){
+        dayUpdated.keySet().retainAll(dates);
+        boolean changed = days.keySet().retainAll(dates);
+
+        StringTable table = StringTable.shared();
+        for (Map.Entry<String, Schedule> day: days.entrySet()){
+            Schedule schedule = day.getValue().inTable(table);
+            if (schedule != day.getValue()){
+                day.setValue(schedule);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Copies the attributes read from the channel list from another
+     * channel, used to keep the channel and its schedule when the channel
+     * list is read again.
+     *
+     * @param channel the channel to copy from.
+     */
+    public void copyAttributes(Channel channel){
+        name = channel.name;
+        imageURL = channel.imageURL;
+        description = channel.description;
+        siteURL = channel.siteURL;
+        type = channel.type;
+        scheduleURL = channel.scheduleURL;
+    }
+
+    /**
+     * Joins the day schedules into one time sorted schedule and sets it as
+     * the schedule of the channel.
+     */
+    public void rebuildSchedule(){
+        ArrayList<Schedule> daySchedules;
+        synchronized (this){
+            daySchedules = new ArrayList<>(days.values());
+        }
+        schedule = Schedule.join(daySchedules);
+    }
+
+    /**
+     * Loads the schedule of the channel. If the schedule is still being
+     * loaded it is moved to the front of the load queue. Never blocks, so
+     * it can be called on the event dispatch thread.
+     *
+     * @return a future that completes with the schedule of all loaded days
+     *         when it has been loaded.
+     */
+    public CompletableFuture<Schedule> loadSchedule(){
+        ScheduleLoader scheduleLoader = loader;
+        if (scheduleLoader == null){
+            return CompletableFuture.completedFuture(schedule);
+        }
+        return scheduleLoader.prioritize(this).thenApply(loaded -> schedule);
+    }
+
+    /**
+     * Returns the schedule of the channel as it is loaded so far, without
+     * waiting for it to be loaded.
      *
-     * @return the schedule.
+     * @return the schedule of all loaded days, sorted by start time.
      */
-    public ArrayList<Program> getSchedule(){
+    public Schedule getLoadedSchedule(){
         return schedule;
     }
 
+    /**
+     * Sets the loader that loads the schedule of the channel on demand.
+     *
+     * @param loader the loader.
+     */
+    public void setScheduleLoader(ScheduleLoader loader){
+        this.loader = loader;
+    }
+
+    /**
+     * Returns whether the schedule of the channel was read from a snapshot
+     * and has not been confirmed to be up to date since.
+     *
+     * @return true if the schedule may be out of date.
+     */
+    public boolean isStale(){
+        return stale;
+    }
+
+    /**
+     * Sets whether the schedule of the channel may be out of date.
+     *
+     * @param stale true if the schedule may be out of date.
+     */
+    public void setStale(boolean stale){
+        this.stale = stale;
+    }
+
     /**
      * Returns channel id.
      *
@@ -55,6 +247,51 @@ public class Channel {
         return name;
     }
 
+    /**
+     * Returns the image URL of the channel.
+     *
+     * @return the image URL as String.
+     */
+    public String getImageURL(){
+        return imageURL;
+    }
+
+    /**
+     * Returns the channel description.
+     *
+     * @return the description as String.
+     */
+    public String getDescription(){
+        return description;
+    }
+
+    /**
+     * Returns the site URL of the channel.
+     *
+     * @return the site URL as String.
+     */
+    public String getSiteURL(){
+        return siteURL;
+    }
+
+    /**
+     * Returns the channel type.
+     *
+     * @return the type as String.
+     */
+    public String getType(){
+        return type;
+    }
+
+    /**
+     * Returns the schedule URL of the channel.
+     *
+     * @return the schedule URL as String.
+     */
+    public String getScheduleURL(){
+        return scheduleURL;
+    }
+
     /**
      * Sets the channel id.
      *
@@ -11,15 +11,21 @@ import java.util.ArrayList;
  */
 public class ChannelHandler extends DefaultHandler {
 
+    private static final int NONE = 0;
+    private static final int IMAGE_URL = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int SITE_URL = 3;
+    private static final int TYPE = 4;
+    private static final int SCHEDULE_URL = 5;
+
     private ArrayList<Channel> channelList = null;
     private Channel channel = null;
-    private StringBuilder data = null;
+    private final StringBuilder data = new StringBuilder();
 
-    private boolean imageURL = false;
-    private boolean description = false;
-    private boolean siteURL = false;
-    private boolean type = false;
-    private boolean scheduleURL = false;
+    private int field = NONE;
+    private int elements = 0;
+    private boolean counting = false;
+    private ParseEvent event = null;
 
     /**
      * Returns a list of channel objects read from a xml file.
@@ -50,36 +56,43 @@ public class ChannelHandler extends DefaultHandler {
     public void startElement(String uri, String localName, String qName,
                                  Attributes attributes) throws SAXException {
 
-        if (qName.equalsIgnoreCase("channel")){
-            //Create new Channel
-            String id = attributes.getValue("id");
-            String name = attributes.getValue("name");
+        if (counting){
+            elements++;
+        }
+        switch (qName){
+            case "channel":
+                //Create new Channel
+                String id = attributes.getValue("id");
+                String name = attributes.getValue("name");
 
-            channel = new Channel();
-            channel.setId(Integer.parseInt(id));
-            channel.setName(name);
+                channel = new Channel();
+                channel.setId(Integer.parseInt(id));
+                channel.setName(name);
 
-            if (channelList == null){
-                channelList = new ArrayList<>();
-            }
-        }
-        else if (qName.equalsIgnoreCase("image")){
-            imageURL = true;
-        }
-        else if (qName.equalsIgnoreCase("tagline")){
-            description = true;
-        }
-        else if (qName.equalsIgnoreCase("siteurl")){
-            siteURL = true;
-        }
-        else if (qName.equalsIgnoreCase("channeltype")){
-            type = true;
-        }
-        else if (qName.equalsIgnoreCase("scheduleurl")){
-            scheduleURL = true;
+                if (channelList == null){
+                    channelList = new ArrayList<>();
+                }
+                break;
+            case "image":
+                field = IMAGE_URL;
+                break;
+            case "tagline":
+                field = DESCRIPTION;
+                break;
+            case "siteurl":
+                field = SITE_URL;
+                break;
+            case "channeltype":
+                field = TYPE;
+                break;
+            case "scheduleurl":
+                field = SCHEDULE_URL;
+                break;
+            default:
+                break;
         }
 
-        data = new StringBuilder();
+        data.setLength(0);
 
     }
 
@@ -100,36 +113,35 @@ public class ChannelHandler extends DefaultHandler {
     @Override
     public void endElement(String uri, String localName, String qName)
                                                          throws SAXException {
-        String dataString = data.toString().trim();
-        if (imageURL){
-            channel.setImageURL(dataString);
-            imageURL = false;
-        }
-        else if (description){
-            channel.setDescription(dataString);
-            description = false;
-        }
-        else if (siteURL){
-            channel.setSiteURL(dataString);
-            siteURL = false;
-        }
-        else if (type){
-            channel.setType(dataString);
-            type = false;
-        }
-        else if (scheduleURL){
-            channel.setScheduleURL(dataString);
-            scheduleURL = false;
+        switch (field){
+            case IMAGE_URL:
+                channel.setImageURL(ProgramHandler.trim(data));
+                break;
+            case DESCRIPTION:
+                channel.setDescription(ProgramHandler.trim(data));
+                break;
+            case SITE_URL:
+                channel.setSiteURL(ProgramHandler.trim(data));
+                break;
+            case TYPE:
+                channel.setType(ProgramHandler.trim(data));
+                break;
+            case SCHEDULE_URL:
+                channel.setScheduleURL(ProgramHandler.trim(data));
+                break;
+            default:
+                break;
         }
+        field = NONE;
 
-        if (qName.equalsIgnoreCase("channel")){
+        if (qName.equals("channel")){
             channelList.add(channel);
         }
     }
 
     /**
-     * Receive notification of character data inside an element. Creates a
-     * String of the character data.
+     * Receive notification of character data inside an element. Appends the
+     * character data to the buffer of the current element.
      *
      * @param ch The characters.
      * @param start The start position in the character array.
@@ -140,6 +152,43 @@ public class ChannelHandler extends DefaultHandler {
     @Override
     public void characters(char[] ch, int start, int length)
                                                         throws SAXException {
-        data.append(new String(ch, start, length));
+        if (field != NONE){
+            data.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Receive notification of the beginning of the document. Starts timing
+     * the parse if the flight recorder records it. Elements are only
+     * counted if the parse is recorded or the Metrics are exposed.
+     *
+     * @throws SAXException Any SAX exception, possibly wrapping another
+     *                      exception.
+     */
+    @Override
+    public void startDocument() throws SAXException {
+        elements = 0;
+        event = ParseEvent.isRecorded() ? new ParseEvent("channels") : null;
+        counting = event != null || Metrics.isStarted();
+    }
+
+    /**
+     * Receive notification of the end of the document. Counts the parsed
+     * elements and channels in the Metrics and the flight recorder event.
+     *
+     * @throws SAXException Any SAX exception, possibly wrapping another
+     *                      exception.
+     */
+    @Override
+    public void endDocument() throws SAXException {
+        int channels = channelList != null ? channelList.size() : 0;
+        Metrics.elementsParsed(elements);
+        Metrics.channelsParsed(channels);
+        if (event != null){
+            event.elements = elements;
+            event.items = channels;
+            event.commit();
+            event = null;
+        }
     }
 }
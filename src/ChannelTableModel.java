@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The model of the channel table, backed by the channel list. Channels read
+ * from the snapshot are marked until they have been refreshed.
+ */
+public class ChannelTableModel extends KeyedTableModel<ChannelTableModel.Row> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String STALE_SUFFIX = " (sparad)";
+
+    /**
+     * Shows a new channel list. Only the channels that were added, removed
+     * or renamed are repainted.
+     *
+     * @param channels the channels.
+     */
+    public void setChannels(List<Channel> channels){
+        ArrayList<Row> rows = new ArrayList<>(channels.size());
+        for (Channel channel: channels){
+            rows.add(new Row(channel));
+        }
+        updateRows(rows);
+    }
+
+    /**
+     * Returns the channel shown in a row.
+     *
+     * @param row the index of the row in the model.
+     * @return the channel.
+     */
+    public Channel getChannel(int row){
+        return getRow(row).channel;
+    }
+
+    /**
+     * Returns the name of a channel as shown in the table.
+     *
+     * @param channel the channel.
+     * @return the name to show.
+     */
+    public static String displayName(Channel channel){
+        return channel.isStale() ? channel.getName()+STALE_SUFFIX :
+                channel.getName();
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns.
+     */
+    @Override
+    public int getColumnCount() {
+        return 1;
+    }
+
+    /**
+     * Returns the name of a column.
+     *
+     * @param column the index of the column.
+     * @return the name.
+     */
+    @Override
+    public String getColumnName(int column) {
+        return "Kanal";
+    }
+
+    /**
+     * Returns the value of a cell.
+     *
+     * @param row the index of the row.
+     * @param column the index of the column.
+     * @return the name of the channel.
+     */
+    @Override
+    public Object getValueAt(int row, int column) {
+        return getRow(row).name;
+    }
+
+    /**
+     * Returns the key identifying a row.
+     *
+     * @param row the row.
+     * @return the id of the channel.
+     */
+    @Override
+    protected Object key(Row row) {
+        return row.channel.getId();
+    }
+
+    /**
+     * Returns whether a channel is shown differently.
+     *
+     * @param previous the row shown so far.
+     * @param updated the row replacing it.
+     * @return true if the shown name has changed.
+     */
+    @Override
+    protected boolean changed(Row previous, Row updated) {
+        return !previous.name.equals(updated.name);
+    }
+
+    /**
+     * A row of the table, the channel and the name shown for it.
+     */
+    static class Row {
+
+        private final Channel channel;
+        private final String name;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param channel the channel.
+         */
+        private Row(Channel channel){
+            this.channel = channel;
+            this.name = displayName(channel);
+        }
+    }
+}
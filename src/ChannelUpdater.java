@@ -0,0 +1,425 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps the channel list and the schedules of all channels up to date with
+ * as few requests as possible. The channel list, past days and current or
+ * future days have separate times to live, and only the parts that have
+ * expired are fetched again and merged into the existing channels.
+ * Schedules are loaded lazily by a ScheduleLoader. When all schedules of a
+ * refresh have been loaded they are written to a Snapshot, which is read on
+ * the next start so that the channels can be shown before they are fetched.
+ */
+public class ChannelUpdater {
+
+    private static final long HOUR = 60*60*1000;
+
+    private final XMLParserSAX parser;
+    private final ScheduleLoader loader;
+    private final ProgramGuide guide = new ProgramGuide();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final Snapshot snapshot;
+    private final long channelListTTL;
+    private final long pastDayTTL;
+    private final long currentDayTTL;
+
+    private ArrayList<Channel> channels;
+    private long channelListUpdated;
+    private long cycle;
+    private CompletableFuture<Void> refresh =
+            CompletableFuture.completedFuture(null);
+    private Map<Channel, CompletableFuture<Void>> channelLoads =
+            Collections.emptyMap();
+
+    /**
+     * Constructor of the class. The channel list and past days are kept for
+     * a day, today's and tomorrow's schedules for an hour.
+     *
+     * @param parser the parser used to fetch channels and schedules.
+     */
+    public ChannelUpdater(XMLParserSAX parser){
+        this(parser, 24*HOUR, 24*HOUR, HOUR, new Snapshot());
+    }
+
+    /**
+     * Constructor of the class.
+     *
+     * @param parser the parser used to fetch channels and schedules.
+     * @param channelListTTL the time to live of the channel list in
+     *                       milliseconds.
+     * @param pastDayTTL the time to live of yesterday's schedule in
+     *                   milliseconds.
+     * @param currentDayTTL the time to live of today's and tomorrow's
+     *                      schedules in milliseconds.
+     * @param snapshot the snapshot the channels are saved to.
+     */
+    public ChannelUpdater(XMLParserSAX parser, long channelListTTL,
+                          long pastDayTTL, long currentDayTTL,
+                          Snapshot snapshot){
+        this.parser = parser;
+        this.snapshot = snapshot;
+        this.loader = new ScheduleLoader(parser, this::index);
+        this.channelListTTL = channelListTTL;
+        this.pastDayTTL = pastDayTTL;
+        this.currentDayTTL = currentDayTTL;
+    }
+
+    /**
+     * Reads the channels of the snapshot written by the last refresh, unless
+     * the channels have already been fetched. The restored channels are
+     * stale until their schedules have been refreshed. The channel list is
+     * always fetched again by the next update, but schedules that have not
+     * expired are kept.
+     *
+     * @return the restored channels, or null if there was no snapshot.
+     */
+    public synchronized ArrayList<Channel> restoreSnapshot(){
+        if (channels != null){
+            return null;
+        }
+        ArrayList<Channel> restored = snapshot.read();
+        if (restored == null || restored.isEmpty()){
+            return null;
+        }
+        channels = restored;
+        channelListUpdated = 0;
+        for (Channel channel: channels){
+            channel.setScheduleLoader(loader);
+            index(channel);
+        }
+        return new ArrayList<>(channels);
+    }
+
+    /**
+     * Updates the channels. In incremental mode only the channel list and
+     * days whose time to live has passed are fetched, otherwise everything
+     * is fetched again. Only the channel list is fetched before the method
+     * returns, the schedules are loaded in the background and on demand
+     * when a channel's schedule is asked for. The time until they are all
+     * loaded is recorded in the Metrics, and every update is a new refresh
+     * cycle that the flight recorder events of its requests are tagged with.
+     * The channel list is fetched before the updater is locked, so that the
+     * request does not block getCycle(), getLoads() and getRefresh().
+     *
+     * @param incremental true to only fetch expired data.
+     * @return the updated channels, or null if no channel list could be read.
+     */
+    public ArrayList<Channel> update(boolean incremental){
+        long cycle = RefreshTrace.nextCycle();
+        RefreshTrace.enter(cycle, 0);
+        try {
+            RefreshCycleEvent event = null;
+            if (RefreshCycleEvent.isRecorded()){
+                event = new RefreshCycleEvent();
+                event.begin();
+                event.cycle = cycle;
+                event.incremental = incremental;
+            }
+            long start = System.nanoTime();
+            long now = System.currentTimeMillis();
+
+            ArrayList<Channel> channelList = null;
+            if (!incremental || isChannelListExpired(now)){
+                channelList = parser.getChannelList();
+            }
+            synchronized (this){
+                this.cycle = cycle;
+                return update(incremental, channelList, now, start, event);
+            }
+        } finally {
+            RefreshTrace.exit();
+        }
+    }
+
+    /**
+     * Returns whether the channel list has to be fetched before the
+     * schedules can be refreshed.
+     *
+     * @param now the time the update started.
+     * @return true if there is no channel list or its time to live has
+     *         passed.
+     */
+    private synchronized boolean isChannelListExpired(long now){
+        return channels == null || now - channelListUpdated >= channelListTTL;
+    }
+
+    /**
+     * Updates the channels as a refresh cycle, with the cycle set as the
+     * trace of the current thread so that the loads it queues are tagged
+     * with it. Every cycle starts a new generation of the shared string
+     * table, and the kept days and cached schedules are copied into it so
+     * that the strings of dropped days are freed. Only channels that had
+     * days removed or copied are rebuilt and indexed here, the channels
+     * whose days are reloaded are rebuilt and indexed when they have been
+     * loaded. Cached responses of days outside yesterday to tomorrow are
+     * evicted.
+     *
+     * @param incremental true to only fetch expired data.
+     * @param channelList the channel list fetched for the update, or null
+     *                    to keep the current channel list.
+     * @param now the time the update started.
+     * @param start the time the update started, as given by
+     *              System.nanoTime().
+     * @param event the flight recorder event of the cycle, committed when
+     *              all schedules are loaded, or null if it is not
+     *              recorded.
+     * @return the updated channels, or null if no channel list could be read.
+     */
+    private ArrayList<Channel> update(boolean incremental,
+                                      ArrayList<Channel> channelList,
+                                      long now, long start,
+                                      RefreshCycleEvent event){
+        if (channelList != null){
+            mergeChannelList(channelList);
+            channelListUpdated = now;
+        }
+        if (channels == null){
+            if (event != null){
+                event.commit();
+            }
+            return null;
+        }
+
+        guide.retainChannels(channels);
+        searchIndex.retainChannels(channels);
+
+        StringTable.nextGeneration();
+        List<String> dates = Arrays.asList(XMLParserSAX.getDate(-1),
+                XMLParserSAX.getDate(0), XMLParserSAX.getDate(1));
+        parser.retainCachedDates(dates.get(0), dates.get(dates.size() - 1));
+        LinkedHashMap<Channel, CompletableFuture<Void>> loads =
+                new LinkedHashMap<>();
+        int queued = 0;
+        for (Channel channel: channels){
+            channel.setScheduleLoader(loader);
+            if (channel.retainDays(dates)){
+                channel.rebuildSchedule();
+                index(channel);
+            }
+
+            CompletableFuture<Void> load =
+                    refreshChannel(channel, dates, incremental, now);
+            loads.put(channel, load);
+            if (!load.isDone()){
+                queued++;
+            }
+        }
+
+        ArrayList<Channel> updated = new ArrayList<>(channels);
+        if (event != null){
+            event.channels = updated.size();
+            event.loads = queued;
+        }
+        channelLoads = Collections.unmodifiableMap(loads);
+        refresh = CompletableFuture.allOf(
+                loads.values().toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> {
+                    writeSnapshot(updated);
+                    Metrics.REFRESH.recordSince(start);
+                    if (event != null){
+                        event.commit();
+                    }
+                });
+        return updated;
+    }
+
+    /**
+     * Queues the expired days of a channel for loading, as one request for
+     * the days from the first to the last expired day. Days in between that
+     * have not expired are fetched with them but keep the time they were
+     * last updated. If the channel is
+     * already loading, the days are not queued until it is done, so that
+     * days being fetched are not fetched again and only the days that are
+     * still expired afterwards are queued.
+     *
+     * @param channel the channel.
+     * @param dates the consecutive dates the channel should have, in date
+     *              order.
+     * @param incremental true to only fetch days whose time to live has
+     *                    passed, false to fetch all days not fetched since
+     *                    the update started.
+     * @param now the time the update started.
+     * @return a future that completes when the channel is loaded.
+     */
+    private CompletableFuture<Void> refreshChannel(Channel channel,
+                                                   List<String> dates,
+                                                   boolean incremental,
+                                                   long now){
+        if (loader.isLoading(channel)){
+            long cycle = RefreshTrace.cycle();
+            return loader.whenLoaded(channel).thenCompose(loaded -> {
+                long previousCycle = RefreshTrace.cycle();
+                int previousChannel = RefreshTrace.channel();
+                RefreshTrace.enter(cycle, channel.getId());
+                try {
+                    return refreshChannel(channel, dates, incremental, now);
+                } finally {
+                    RefreshTrace.enter(previousCycle, previousChannel);
+                }
+            });
+        }
+
+        int first = -1;
+        int last = -1;
+        ArrayList<String> expired = new ArrayList<>();
+        for (int i = 0; i < dates.size(); i++){
+            long ttl = i == 0 ? pastDayTTL : currentDayTTL;
+            long updated = channel.getDayUpdated(dates.get(i));
+            if (updated < now && (!incremental || now - updated >= ttl)){
+                if (first < 0){
+                    first = i;
+                }
+                last = i;
+                expired.add(dates.get(i));
+            }
+        }
+        if (first < 0){
+            channel.setStale(false);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // One request for the whole range is cheaper than one request per
+        // run of expired days, even when a fresh day in between (today,
+        // when only yesterday and tomorrow have expired) is downloaded
+        // again. The fresh day gets the newer schedule, but keeps the time
+        // it was last updated so that its time to live is not reset and it
+        // is refreshed when it would have been without the range.
+        List<String> range = dates.subList(first, last + 1);
+        HashSet<String> fresh = new HashSet<>(range);
+        fresh.removeAll(expired);
+        return loader.load(channel, range, fresh, false).thenRun(() -> {
+            for (String date: expired){
+                if (channel.getDayUpdated(date) < now){
+                    return;
+                }
+            }
+            channel.setStale(false);
+        });
+    }
+
+    /**
+     * Cancels the days that are queued for loading but have not started,
+     * except days that are loaded because the user asked for them. The
+     * cancelled days keep their previous schedules.
+     */
+    public void cancelQueued(){
+        loader.cancelQueued();
+    }
+
+    /**
+     * Returns the id of the refresh cycle of the last update.
+     *
+     * @return the id, or 0 if the channels have not been updated.
+     */
+    public synchronized long getCycle(){
+        return cycle;
+    }
+
+    /**
+     * Returns a future for every channel of the last update that completes
+     * when the channel's schedule has been loaded, so that channels can be
+     * shown as soon as they are ready. Channels that had nothing to load
+     * have completed futures.
+     *
+     * @return the futures by channel, in the order of the channel list.
+     */
+    public synchronized Map<Channel, CompletableFuture<Void>> getLoads(){
+        return channelLoads;
+    }
+
+    /**
+     * Returns a future that completes when all schedules queued by the last
+     * update have been loaded and written to the snapshot.
+     *
+     * @return the future.
+     */
+    public synchronized CompletableFuture<Void> getRefresh(){
+        return refresh;
+    }
+
+    /**
+     * Loads the schedule of a channel before all prefetched schedules.
+     *
+     * @param channel the channel.
+     * @return a future that completes when the schedule is loaded.
+     */
+    public CompletableFuture<Void> loadSchedule(Channel channel){
+        return loader.prioritize(channel);
+    }
+
+    /**
+     * Returns the guide over the schedules of all channels. The guide is
+     * updated whenever the schedule of a channel is loaded.
+     *
+     * @return the guide.
+     */
+    public ProgramGuide getGuide(){
+        return guide;
+    }
+
+    /**
+     * Returns the search index over the programs of all channels. The index
+     * is updated whenever the schedule of a channel is loaded.
+     *
+     * @return the search index.
+     */
+    public SearchIndex getSearchIndex(){
+        return searchIndex;
+    }
+
+    /**
+     * Updates the guide and the search index with the schedule of a
+     * channel.
+     *
+     * @param channel the channel.
+     */
+    private void index(Channel channel){
+        guide.update(channel);
+        searchIndex.update(channel);
+    }
+
+    /**
+     * Writes channels to the snapshot.
+     *
+     * @param channelList the channels.
+     */
+    private void writeSnapshot(List<Channel> channelList){
+        try {
+            snapshot.write(channelList);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Replaces the channel list. Channels that were in the previous list are
+     * kept, with the attributes of the new list, so that their schedules,
+     * loads and index entries stay valid.
+     *
+     * @param channelList the new channel list.
+     */
+    private void mergeChannelList(ArrayList<Channel> channelList){
+        if (channels != null){
+            HashMap<Integer, Channel> previous = new HashMap<>();
+            for (Channel channel: channels){
+                previous.put(channel.getId(), channel);
+            }
+            for (int i = 0; i < channelList.size(); i++){
+                Channel old = previous.get(channelList.get(i).getId());
+                if (old != null){
+                    old.copyAttributes(channelList.get(i));
+                    channelList.set(i, old);
+                }
+            }
+        }
+        channels = channelList;
+    }
+}
@@ -1,11 +1,17 @@
 
 import javax.swing.*;
+import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -17,15 +23,32 @@ import java.util.concurrent.ExecutionException;
 public class Controller {
 
     private final int TIME = 60*60;
+    private static final int IMAGE_SIZE = 200;
+    private static final int SEARCH_LIMIT = 100;
 
     private GUI gui;
+    private final XMLParserSAX parser = new XMLParserSAX();
+    private final ChannelUpdater updater = new ChannelUpdater(parser);
+    private final RefreshCoordinator coordinator =
+            new RefreshCoordinator(updater);
+    private ChannelGetter getter;
 
     private ArrayList<Channel> channels;
-    private ArrayList<Program> schedule;
+    private final HashMap<Integer, Channel> channelsById = new HashMap<>();
+    private final ChannelTableModel channelModel = new ChannelTableModel();
+    private final ScheduleTableModel scheduleModel = new ScheduleTableModel();
+    private final SearchTableModel searchModel = new SearchTableModel();
+    private Channel selectedChannel;
+    private Program selectedProgram;
+    private final ImageCache images = new ImageCache(parser.getClient(),
+            parser.getPolicy(), IMAGE_SIZE, IMAGE_SIZE, 16*1024*1024,
+            64*1024*1024);
 
-    private ActionListener update = e -> update();
+    private ActionListener update = e -> update(false);
+    private ActionListener search = e -> search(gui.getSearchQuery());
     private MouseAdapter channelMouseAdapter;
     private MouseAdapter scheduleMouseAdapter;
+    private MouseAdapter searchMouseAdapter;
 
     private boolean firstUpdate = true;
     /**
@@ -46,15 +69,17 @@ public class Controller {
                 if (e.getClickCount() == 2) {
                     JTable target = (JTable) e.getSource();
                     int row = target.getSelectedRow();
-
-                    for (Channel channel: channels){
-                        if (channel.getName().equals(target.getValueAt(row,0))){
-                            schedule = channel.getSchedule();
-                            callUpdateSchedule(channel);
-                            break;
-                        }
-
+                    if (row < 0){
+                        return;
                     }
+
+                    Channel channel = channelModel.getChannel(
+                            target.convertRowIndexToModel(row));
+                    selectedChannel = channel;
+                    scheduleModel.clear();
+                    updater.loadSchedule(channel).thenRun(() ->
+                            SwingUtilities.invokeLater(() ->
+                                    showLoadedSchedule(channel)));
                     gui.showSchedule();
                 }
             }
@@ -66,24 +91,85 @@ public class Controller {
                 if (e.getClickCount() == 2) {
                     JTable target = (JTable) e.getSource();
                     int row = target.getSelectedRow();
+                    if (row < 0){
+                        return;
+                    }
 
-                    String title = (String)target.getValueAt(row, 0);
+                    showProgram(scheduleModel.getProgram(
+                            target.convertRowIndexToModel(row)));
+                }
+            }
+        };
 
-                    for (Program program: schedule){
-                        if (program.getTitle().equals(title)){
-                            gui.setProgramInfo(program.getDescription(),
-                                    program.getName(), program.getImage(),
-                                    program.getStartDate(),
-                                    program.getEndDate(),program.getSubtitle());
-                            gui.showProgramInfo();
-                            break;
-                        }
+        searchMouseAdapter = new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    JTable target = (JTable) e.getSource();
+                    int row = target.getSelectedRow();
+                    if (row < 0){
+                        return;
                     }
+
+                    showProgram(searchModel.getProgram(
+                            target.convertRowIndexToModel(row)));
                 }
             }
         };
     }
 
+    /**
+     * Selects a program and shows its information, first with a
+     * placeholder and then with its image once it has been loaded.
+     *
+     * @param program the program.
+     */
+    private void showProgram(Program program){
+        selectedProgram = program;
+        setProgramInfo(program, images.getPlaceholder());
+        gui.showProgramInfo();
+        images.getImage(program.getImageURL())
+                .thenAccept(image ->
+                        SwingUtilities.invokeLater(() ->
+                                showLoadedImage(program, image)));
+    }
+
+    /**
+     * Searches the programs of all channels and shows the results.
+     *
+     * @param query the words to search for.
+     */
+    private void search(String query){
+        searchModel.setHits(updater.getSearchIndex().search(query,
+                SEARCH_LIMIT));
+        gui.showSearchResults();
+    }
+
+    /**
+     * Shows the information of a program in the GUI.
+     *
+     * @param program the program.
+     * @param image the image to show with the program.
+     */
+    private void setProgramInfo(Program program, Image image){
+        gui.setProgramInfo(program.getDescription(), program.getName(), image,
+                program.getStartDate(), program.getEndDate(),
+                program.getSubtitle());
+    }
+
+    /**
+     * Shows the image of a program once it has been loaded, unless another
+     * program has been selected while it was loading.
+     *
+     * @param program the program.
+     * @param image the loaded image, or null if it could not be loaded.
+     */
+    private void showLoadedImage(Program program, Image image){
+        if (program == selectedProgram && image != null){
+            setProgramInfo(program, image);
+        }
+    }
+
     /**
      * Creates the GUI on a new thread.
      */
@@ -93,12 +179,18 @@ public class Controller {
         SwingUtilities.invokeLater(()-> {
             gui = new GUI(channelMouseAdapter,
                         scheduleMouseAdapter, update);
+            gui.setChannelTableModel(channelModel);
+            gui.setScheduleTableModel(scheduleModel);
+            gui.setSearchTableModel(searchModel);
+            gui.setSearchListeners(search, searchMouseAdapter);
             gui.packAndShow();
         });
     }
 
     /**
-     * Starts a timer that updates the channel list every hour.
+     * Starts a timer that updates the channel list every hour. The hourly
+     * updates are incremental and only fetch expired schedules, and join
+     * an update that is still running instead of starting another.
      */
     private void startHourlyUpdate(){
         java.util.Timer t = new Timer();
@@ -106,10 +198,17 @@ public class Controller {
             @Override
             public void run() {
                 if (!firstUpdate){
-                    update();
+                    SwingUtilities.invokeLater(() -> update(true));
                 }
                 else {
-                    new ChannelGetter().execute();
+                    ArrayList<Channel> restored = updater.restoreSnapshot();
+                    SwingUtilities.invokeLater(() -> {
+                        if (restored != null){
+                            channels = restored;
+                            callUpdateChannels(restored);
+                        }
+                        refresh(true);
+                    });
                     firstUpdate = false;
                 }
             }
@@ -117,83 +216,214 @@ public class Controller {
     }
 
     /**
-     * Creates a String array of the channel list and then updates the
-     * channel table in the GUI.
+     * Shows the channel list in the channel table, and the refreshed
+     * schedule of the selected channel if it is still in the list. Only
+     * the rows that changed are repainted, so the selection and scroll
+     * position of the tables are kept.
+     *
+     * @param channels the channels to show.
      */
     private void callUpdateChannels(ArrayList<Channel> channels){
-        String[][] channelArray = new String[channels.size()][1];
+        channelModel.setChannels(channels);
 
-        int i = 0;
+        channelsById.clear();
         for (Channel channel: channels){
-            channelArray[i][0] = channel.getName();
-            i++;
+            channelsById.put(channel.getId(), channel);
+        }
+        if (selectedChannel != null){
+            Channel channel = channelsById.get(selectedChannel.getId());
+            if (channel != null){
+                selectedChannel = channel;
+                showLoadedSchedule(channel);
+            }
         }
-
-        gui.updateChannelTable(channelArray);
-        gui.updateUpdateDialog();
     }
 
     /**
-     * Creates a String array of the program list and then updates the
-     * program table in the GUI.
+     * Shows the schedule of a channel once it has been loaded, unless
+     * another channel has been selected while it was loading.
      *
-     * @param channel the channel containing the schedule to update.
+     * @param channel the loaded channel.
      */
-    private void callUpdateSchedule(Channel channel){
-        String[][] scheduleArray = new String[channel.getSchedule().size()][3];
-
-        int i = 0;
-        for (Program program : channel.getSchedule()) {
-            scheduleArray[i][0] = program.getTitle();
-            scheduleArray[i][1] = program.getStartDate();
-            scheduleArray[i][2] = program.getEndDate();
-            i++;
+    private void showLoadedSchedule(Channel channel){
+        if (channel == selectedChannel){
+            Schedule schedule = channel.getLoadedSchedule();
+            scheduleModel.setSchedule(channel, schedule,
+                    schedule.getShortScheduleRows());
         }
+    }
 
-        gui.updateScheduleTable(scheduleArray);
+    /**
+     * Calls to update channels, showing the update dialog unless the update
+     * joins one that is already shown.
+     *
+     * @param incremental true to only fetch expired schedules, false to
+     *                    fetch everything again.
+     */
+    private void update(boolean incremental){
+        if (refresh(incremental)){
+            gui.disableUpdate();
+            gui.showUpdateDialog();
+        }
     }
 
     /**
-     * Calls to update channels.
+     * Asks the refresh coordinator for a refresh and starts a ChannelGetter
+     * showing it, unless the refresh is the one already being shown. A
+     * ChannelGetter showing a superseded refresh is cancelled, so that only
+     * one worker at a time shows channels. Must be called on the event
+     * dispatch thread.
+     *
+     * @param incremental true to only fetch expired schedules, false to
+     *                    fetch everything again.
+     * @return true if a new ChannelGetter was started.
      */
-    private void update(){
-        gui.disableUpdate();
-        new ChannelGetter().execute();
-        gui.showUpdateDialog();
+    private boolean refresh(boolean incremental){
+        RefreshCoordinator.Refresh refresh =
+                coordinator.refresh(incremental);
+        if (getter != null && getter.refresh == refresh){
+            return false;
+        }
+        if (getter != null){
+            getter.cancel(true);
+        }
+        getter = new ChannelGetter(refresh);
+        getter.execute();
+        return true;
     }
 
     /**
-     * SwingWorker responsible for fetching channel information.
+     * SwingWorker responsible for fetching channel information. Every
+     * channel is published as soon as its schedule has been loaded, so the
+     * channel table fills in and the update dialog counts the loaded
+     * channels while the rest are still being fetched.
      */
-    public class ChannelGetter extends SwingWorker<ArrayList<Channel>, Integer>{
+    public class ChannelGetter extends SwingWorker<ArrayList<Channel>, Channel>{
+
+        private final RefreshCoordinator.Refresh refresh;
+        private final long start = System.nanoTime();
+        private long cycle;
+        private ArrayList<Channel> updated;
+        private final HashSet<Channel> loaded = new HashSet<>();
 
         /**
-         * Fetches a channel list.
+         * Constructor of the class.
          *
-         * @return unused return integer.
+         * @param refresh the refresh to show.
+         */
+        public ChannelGetter(RefreshCoordinator.Refresh refresh){
+            this.refresh = refresh;
+        }
+
+        /**
+         * Waits for the channel list of the refresh and then for the
+         * schedules of its channels, publishing every channel when its
+         * schedule is loaded.
+         *
+         * @return the updated channels, or null if no channel list could be
+         *         read.
          * @throws Exception if unable to compute a result
          */
         @Override
         protected ArrayList<Channel> doInBackground() throws Exception {
-            XMLParserSAX parser = new XMLParserSAX();
+            ArrayList<Channel> channelList = refresh.getChannelList().get();
+            if (channelList == null){
+                return null;
+            }
+            cycle = refresh.getCycle();
+            updated = channelList;
+
+            List<CompletableFuture<Void>> published = new ArrayList<>();
+            for (Map.Entry<Channel, CompletableFuture<Void>> load:
+                    refresh.getLoads().entrySet()){
+                Channel channel = load.getKey();
+                published.add(load.getValue().thenRun(() ->
+                        publish(channel)));
+            }
+            CompletableFuture.allOf(published.toArray(
+                    new CompletableFuture<?>[0])).get();
+            return channelList;
+        }
+
+        /**
+         * Shows the channels published since the last call, on the event
+         * dispatch thread, unless another ChannelGetter has replaced this
+         * one. The channel table shows the channels that have
+         * been loaded and those that were already shown, in the order of
+         * the channel list, and the update dialog shows how many channels
+         * have been loaded. The time until the channel list is first shown
+         * is recorded in the Metrics.
+         *
+         * @param chunks the channels whose schedules have been loaded.
+         */
+        @Override
+        protected void process(List<Channel> chunks) {
+            if (getter != this){
+                return;
+            }
+            boolean first = loaded.isEmpty();
+            loaded.addAll(chunks);
 
-            return parser.getChannels();
+            ArrayList<Channel> visible = new ArrayList<>();
+            for (Channel channel: updated){
+                if (loaded.contains(channel) ||
+                        channelsById.containsKey(channel.getId())){
+                    visible.add(channel);
+                }
+            }
+            channels = visible;
+            showChannels(visible, "progress");
+            if (first){
+                Metrics.CHANNEL_LIST_REFRESH.recordSince(start);
+            }
+            gui.setUpdateProgress(loaded.size(), updated.size());
         }
 
         /**
-         * Calls to update channel table when doInBackground() is finished.
+         * Shows all updated channels when their schedules have been loaded,
+         * including channels whose schedules could not be loaded within the
+         * refresh budget, which keep their previous schedules. Does nothing
+         * if another ChannelGetter has replaced this one.
          */
         @Override
         protected void done() {
+            if (getter != this){
+                return;
+            }
             try {
-                channels = get();
-                callUpdateChannels(channels);
+                ArrayList<Channel> channelList = get();
+                if (channelList != null){
+                    channels = channelList;
+                    showChannels(channelList, "schedules");
+                }
             } catch (InterruptedException | ExecutionException e) {
                 e.printStackTrace();
             }
+            gui.updateUpdateDialog();
             gui.enableUpdate();
         }
 
+        /**
+         * Shows refreshed channels, recording the time it takes on the event
+         * dispatch thread as a flight recorder event of the refresh cycle.
+         *
+         * @param shown the channels.
+         * @param step the step of the refresh the channels are shown after.
+         */
+        private void showChannels(ArrayList<Channel> shown, String step){
+            if (!UiUpdateEvent.isRecorded()){
+                callUpdateChannels(shown);
+                return;
+            }
+            UiUpdateEvent event = new UiUpdateEvent();
+            event.begin();
+            callUpdateChannels(shown);
+            event.cycle = cycle;
+            event.channels = shown.size();
+            event.step = step;
+            event.commit();
+        }
+
     }
 
 }
@@ -0,0 +1,134 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for one phase of a request to the API. The
+ * "connect" phase lasts until the response headers have been received and
+ * the "download" phase until the whole body has been read.
+ */
+@Name("radioinfo.Fetch")
+@Label("Fetch")
+@Category({"RadioInfo", "Refresh"})
+@Description("Connecting to the API or downloading a response body")
+public class FetchEvent extends Event {
+
+    private static final EventType TYPE =
+            EventType.getEventType(FetchEvent.class);
+
+    @Label("Cycle")
+    long cycle;
+
+    @Label("Channel")
+    int channel;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Date")
+    String date;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Status")
+    int status;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Attempt")
+    @Description("0 for the first attempt, then the number of the retry")
+    int attempt;
+
+    @Label("Hedge")
+    @Description("Whether the request was sent because another was slow")
+    boolean hedge;
+
+    @Label("Failed")
+    boolean failed;
+
+    /**
+     * Constructor of the class. Starts timing the phase and tags it with the
+     * refresh cycle of the current thread.
+     *
+     * @param endpoint the endpoint of the request.
+     * @param channel the id of the channel of a schedule request, or 0.
+     * @param date the date of a schedule request, or null.
+     * @param phase the phase of the request.
+     */
+    FetchEvent(String endpoint, int channel, String date, String phase){
+        this.cycle = RefreshTrace.cycle();
+        this.channel = channel;
+        this.endpoint = endpoint;
+        this.date = date;
+        this.phase = phase;
+        begin();
+    }
+
+    /**
+     * Returns whether a running recording has the event enabled. The
+     * enabled state is kept by the event type, so checking it does not
+     * allocate, and requests only create events when they are recorded.
+     *
+     * @return true if the event is recorded.
+     */
+    static boolean isRecorded(){
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Starts timing a phase of a request if the event is recorded.
+     *
+     * @param endpoint the endpoint of the request.
+     * @param channel the id of the channel of a schedule request, or 0.
+     * @param date the date of a schedule request, or null.
+     * @param phase the phase of the request.
+     * @param attempt 0 for the first attempt, then the number of the retry.
+     * @param hedge true if the request was sent because another was slow.
+     * @return the phase, or null if the event is not recorded.
+     */
+    static FetchEvent start(String endpoint, int channel, String date,
+                            String phase, int attempt, boolean hedge){
+        if (!isRecorded()){
+            return null;
+        }
+        FetchEvent event = new FetchEvent(endpoint, channel, date, phase);
+        event.attempt = attempt;
+        event.hedge = hedge;
+        return event;
+    }
+
+    /**
+     * Commits a phase that ended successfully.
+     *
+     * @param event the phase, or null if the event is not recorded.
+     * @param status the status code of the response.
+     * @param bytes the number of bytes of the body read in the phase.
+     */
+    static void end(FetchEvent event, int status, long bytes){
+        if (event != null){
+            event.status = status;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Commits a phase that ended with a failure.
+     *
+     * @param event the phase, or null if no phase was in progress or the
+     *              event is not recorded.
+     */
+    static void fail(FetchEvent event){
+        if (event != null){
+            event.failed = true;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The limits of the requests sent to the API: the connect and read
+ * timeouts of a single request, the budget of a whole refresh, the number
+ * of times a failed request is retried and the delay before a slow request
+ * is hedged with a second identical request. Retries wait an exponentially
+ * growing delay with random jitter, so that channels that failed together
+ * are not retried together.
+ */
+public class FetchPolicy {
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final int DEFAULT_READ_TIMEOUT = 15000;
+    private static final long DEFAULT_REFRESH_BUDGET = 60000;
+    private static final int DEFAULT_RETRIES = 2;
+    private static final long DEFAULT_RETRY_DELAY = 250;
+    private static final long MAX_RETRY_DELAY = 5000;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long refreshBudget;
+    private final int retries;
+    private final long retryDelay;
+    private final long hedgeDelay;
+
+    /**
+     * Constructor of the class. Uses the limits in milliseconds given by the
+     * system properties "radioinfo.connectTimeout", "radioinfo.readTimeout",
+     * "radioinfo.refreshBudget", "radioinfo.retryDelay" and
+     * "radioinfo.hedgeDelay", and the number of retries given by
+     * "radioinfo.retries", or the defaults. Requests are not hedged unless
+     * a hedge delay is given.
+     */
+    public FetchPolicy(){
+        this(Integer.getInteger("radioinfo.connectTimeout",
+                        DEFAULT_CONNECT_TIMEOUT),
+                Integer.getInteger("radioinfo.readTimeout",
+                        DEFAULT_READ_TIMEOUT),
+                Long.getLong("radioinfo.refreshBudget",
+                        DEFAULT_REFRESH_BUDGET),
+                Integer.getInteger("radioinfo.retries", DEFAULT_RETRIES),
+                Long.getLong("radioinfo.retryDelay", DEFAULT_RETRY_DELAY),
+                Long.getLong("radioinfo.hedgeDelay", 0));
+    }
+
+    /**
+     * Constructor of the class.
+     *
+     * @param connectTimeout the connect timeout of a request in
+     *                       milliseconds.
+     * @param readTimeout the read timeout of a request in milliseconds.
+     * @param refreshBudget the time in milliseconds that the requests of a
+     *                      refresh may take, including retries.
+     * @param retries the number of times a failed request is retried.
+     * @param retryDelay the delay in milliseconds before the first retry,
+     *                   doubled for every following retry.
+     * @param hedgeDelay the time in milliseconds to wait for a response
+     *                   before sending a second request, or 0 to never
+     *                   send a second request.
+     */
+    public FetchPolicy(int connectTimeout, int readTimeout,
+                       long refreshBudget, int retries, long retryDelay,
+                       long hedgeDelay){
+        if (connectTimeout < 1 || readTimeout < 1 || refreshBudget < 1){
+            throw new IllegalArgumentException("timeouts and budget must " +
+                    "be positive");
+        }
+        if (retries < 0 || retryDelay < 0 || hedgeDelay < 0){
+            throw new IllegalArgumentException("retries and delays must " +
+                    "not be negative");
+        }
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.refreshBudget = refreshBudget;
+        this.retries = retries;
+        this.retryDelay = retryDelay;
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * Returns the connect timeout of a request.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public int getConnectTimeout(){
+        return connectTimeout;
+    }
+
+    /**
+     * Returns the connect timeout of a request, shortened to the time left
+     * before a deadline.
+     *
+     * @param deadline the deadline given by System.nanoTime().
+     * @return the timeout in milliseconds, at least 1.
+     */
+    public int getConnectTimeout(long deadline){
+        return (int) Math.max(1, Math.min(connectTimeout,
+                remaining(deadline)));
+    }
+
+    /**
+     * Returns the read timeout of a request.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public int getReadTimeout(){
+        return readTimeout;
+    }
+
+    /**
+     * Returns the read timeout of a request, shortened to the time left
+     * before a deadline.
+     *
+     * @param deadline the deadline given by System.nanoTime().
+     * @return the timeout in milliseconds, at least 1.
+     */
+    public int getReadTimeout(long deadline){
+        return (int) Math.max(1, Math.min(readTimeout, remaining(deadline)));
+    }
+
+    /**
+     * Returns the deadline of a refresh starting now.
+     *
+     * @return the deadline as given by System.nanoTime().
+     */
+    public long newDeadline(){
+        return System.nanoTime() + refreshBudget*1000000;
+    }
+
+    /**
+     * Returns the number of times a failed request is retried.
+     *
+     * @return the number of retries.
+     */
+    public int getRetries(){
+        return retries;
+    }
+
+    /**
+     * Returns the time to wait before a retry: half of the exponentially
+     * growing delay plus a random part of the other half.
+     *
+     * @param retry the number of the retry, starting at 0.
+     * @return the delay in milliseconds.
+     */
+    public long getRetryDelay(int retry){
+        long delay = Math.min(MAX_RETRY_DELAY,
+                retryDelay << Math.min(retry, 20));
+        long half = delay/2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * Returns the time to wait for a response before sending a second
+     * request.
+     *
+     * @return the delay in milliseconds, or 0 if requests are not hedged.
+     */
+    public long getHedgeDelay(){
+        return hedgeDelay;
+    }
+
+    /**
+     * Returns the time left before a deadline.
+     *
+     * @param deadline the deadline given by System.nanoTime().
+     * @return the time left in milliseconds, negative if it has passed.
+     */
+    public static long remaining(long deadline){
+        return (deadline - System.nanoTime())/1000000;
+    }
+}
@@ -1,3 +1,365 @@
+import javax.swing.*;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableModel;
+import java.awt.*;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+
+/**
+ * The window of the application. The channel table, the schedule of a
+ * channel, the results of a search and the information of a program are
+ * shown one at a time as cards in the window, below a search field. The
+ * menu bar has items for updating the channels and for showing the help
+ * and about dialogs. The tables are backed by the table models of the
+ * Controller, so the GUI never copies any rows.
+ */
 public class GUI {
-    
+
+    private static final String CHANNELS = "channels";
+    private static final String SCHEDULE = "schedule";
+    private static final String PROGRAM = "program";
+    private static final String SEARCH = "search";
+
+    private final JFrame frame = new JFrame("RadioInfo");
+    private final CardLayout cardLayout = new CardLayout();
+    private final JPanel cards = new JPanel(cardLayout);
+    private String shownCard = CHANNELS;
+    private String programReturnCard = SCHEDULE;
+
+    private final JTable channelTable = new JTable();
+    private final JTable scheduleTable = new JTable();
+    private final JTable searchTable = new JTable();
+    private final JTextField searchField = new JTextField();
+    private final JButton searchButton = new JButton("Sök");
+    private final JMenuItem updateItem = new JMenuItem("Uppdatera");
+
+    private final JLabel programImage = new JLabel();
+    private final JLabel programName = new JLabel();
+    private final JLabel programSubtitle = new JLabel();
+    private final JLabel programTime = new JLabel();
+    private final JTextArea programDescription = new JTextArea();
+
+    private UpdateDialog updateDialog;
+    private Timer updateTimer;
+
+    /**
+     * Constructor of the class. Builds the window without showing it.
+     *
+     * @param channelMouseAdapter listener for clicks in the channel table.
+     * @param scheduleMouseAdapter listener for clicks in the schedule table.
+     * @param update listener for the update menu item.
+     */
+    public GUI(MouseAdapter channelMouseAdapter,
+               MouseAdapter scheduleMouseAdapter, ActionListener update){
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setJMenuBar(createMenuBar(update));
+
+        channelTable.addMouseListener(channelMouseAdapter);
+        scheduleTable.addMouseListener(scheduleMouseAdapter);
+
+        cards.add(new JScrollPane(channelTable), CHANNELS);
+        cards.add(createCard(new JScrollPane(scheduleTable), CHANNELS),
+                SCHEDULE);
+        cards.add(createProgramCard(), PROGRAM);
+        cards.add(createCard(new JScrollPane(searchTable), CHANNELS),
+                SEARCH);
+
+        JPanel searchBar = new JPanel(new BorderLayout(5, 0));
+        searchBar.add(searchField, BorderLayout.CENTER);
+        searchBar.add(searchButton, BorderLayout.EAST);
+        frame.add(searchBar, BorderLayout.NORTH);
+        frame.add(cards, BorderLayout.CENTER);
+    }
+
+    /**
+     * Creates the menu bar.
+     *
+     * @param update listener for the update menu item.
+     * @return the menu bar.
+     */
+    private JMenuBar createMenuBar(ActionListener update){
+        JMenu menu = new JMenu("Meny");
+        updateItem.addActionListener(update);
+        menu.add(updateItem);
+
+        JMenuItem helpItem = new JMenuItem("Hjälp");
+        helpItem.addActionListener(e -> new HelpDialog());
+        menu.add(helpItem);
+
+        JMenuItem aboutItem = new JMenuItem("Om");
+        aboutItem.addActionListener(e -> new AboutDialog());
+        menu.add(aboutItem);
+
+        JMenuBar menuBar = new JMenuBar();
+        menuBar.add(menu);
+        return menuBar;
+    }
+
+    /**
+     * Creates a card with a button going back to another card.
+     *
+     * @param content the content of the card.
+     * @param back the card the button goes back to.
+     * @return the card.
+     */
+    private JPanel createCard(Component content, String back){
+        JButton backButton = new JButton("Tillbaka");
+        backButton.addActionListener(e -> showCard(back));
+
+        JPanel card = new JPanel(new BorderLayout());
+        card.add(content, BorderLayout.CENTER);
+        card.add(backButton, BorderLayout.SOUTH);
+        return card;
+    }
+
+    /**
+     * Creates the card showing the information of a program. Its button
+     * goes back to the card the program was chosen from.
+     *
+     * @return the card.
+     */
+    private JPanel createProgramCard(){
+        programName.setFont(programName.getFont().deriveFont(Font.BOLD,
+                16f));
+        JPanel labels = new JPanel(new GridLayout(3, 1));
+        labels.add(programName);
+        labels.add(programSubtitle);
+        labels.add(programTime);
+
+        JPanel header = new JPanel(new BorderLayout(10, 0));
+        header.add(programImage, BorderLayout.WEST);
+        header.add(labels, BorderLayout.CENTER);
+
+        programDescription.setEditable(false);
+        programDescription.setLineWrap(true);
+        programDescription.setWrapStyleWord(true);
+
+        JButton backButton = new JButton("Tillbaka");
+        backButton.addActionListener(e -> showCard(programReturnCard));
+
+        JPanel card = new JPanel(new BorderLayout(0, 10));
+        card.add(header, BorderLayout.NORTH);
+        card.add(new JScrollPane(programDescription), BorderLayout.CENTER);
+        card.add(backButton, BorderLayout.SOUTH);
+        return card;
+    }
+
+    /**
+     * Shows one of the cards.
+     *
+     * @param card the name of the card.
+     */
+    private void showCard(String card){
+        shownCard = card;
+        cardLayout.show(cards, card);
+    }
+
+    /**
+     * Packs the window and shows it in the middle of the screen.
+     */
+    public void packAndShow(){
+        frame.setPreferredSize(new Dimension(600, 500));
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+    }
+
+    /**
+     * Sets the model of the channel table.
+     *
+     * @param model the model.
+     */
+    public void setChannelTableModel(TableModel model){
+        channelTable.setModel(model);
+    }
+
+    /**
+     * Sets the model of the schedule table. Programs that have already
+     * ended are shown in grey.
+     *
+     * @param model the model.
+     */
+    public void setScheduleTableModel(ScheduleTableModel model){
+        scheduleTable.setModel(model);
+        scheduleTable.setDefaultRenderer(Object.class,
+                new ScheduleRenderer(model));
+    }
+
+    /**
+     * Sets the model of the table of search results.
+     *
+     * @param model the model.
+     */
+    public void setSearchTableModel(TableModel model){
+        searchTable.setModel(model);
+    }
+
+    /**
+     * Sets the listeners of the search field and the table of search
+     * results. The search listener is called when enter is pressed in the
+     * search field or the search button is pushed.
+     *
+     * @param search listener starting a search.
+     * @param searchMouseAdapter listener for clicks in the search results.
+     */
+    public void setSearchListeners(ActionListener search,
+                                   MouseAdapter searchMouseAdapter){
+        searchField.addActionListener(search);
+        searchButton.addActionListener(search);
+        searchTable.addMouseListener(searchMouseAdapter);
+    }
+
+    /**
+     * Returns the text of the search field.
+     *
+     * @return the words to search for.
+     */
+    public String getSearchQuery(){
+        return searchField.getText();
+    }
+
+    /**
+     * Shows the table of search results.
+     */
+    public void showSearchResults(){
+        showCard(SEARCH);
+    }
+
+    /**
+     * Shows the schedule table.
+     */
+    public void showSchedule(){
+        showCard(SCHEDULE);
+    }
+
+    /**
+     * Shows the information of the program last set with setProgramInfo.
+     */
+    public void showProgramInfo(){
+        if (!shownCard.equals(PROGRAM)){
+            programReturnCard = shownCard;
+        }
+        showCard(PROGRAM);
+    }
+
+    /**
+     * Sets the information of a program.
+     *
+     * @param description the description of the program.
+     * @param name the name of the series of the program.
+     * @param image the image of the program, or null.
+     * @param start the formatted start time.
+     * @param end the formatted end time.
+     * @param subtitle the subtitle of the program.
+     */
+    public void setProgramInfo(String description, String name, Image image,
+                               String start, String end, String subtitle){
+        programName.setText(name);
+        programSubtitle.setText(subtitle);
+        programTime.setText(start+" - "+end);
+        programImage.setIcon(image != null ? new ImageIcon(image) : null);
+        programDescription.setText(description);
+        programDescription.setCaretPosition(0);
+    }
+
+    /**
+     * Disables the update menu item while an update is running.
+     */
+    public void disableUpdate(){
+        updateItem.setEnabled(false);
+    }
+
+    /**
+     * Enables the update menu item.
+     */
+    public void enableUpdate(){
+        updateItem.setEnabled(true);
+    }
+
+    /**
+     * Shows a dialog telling that the channels are being updated, adding a
+     * dot every second until the update is done.
+     */
+    public void showUpdateDialog(){
+        if (updateTimer != null){
+            updateTimer.stop();
+        }
+        UpdateDialog dialog = new UpdateDialog();
+        updateDialog = dialog;
+        updateTimer = new Timer(1000, e -> dialog.indicateTimeHasPassed());
+        updateTimer.start();
+    }
+
+    /**
+     * Shows in the update dialog, if it is shown, how many channels have
+     * been loaded so far.
+     *
+     * @param completed the number of loaded channels.
+     * @param total the number of channels.
+     */
+    public void setUpdateProgress(int completed, int total){
+        if (updateDialog != null){
+            updateDialog.showProgress(completed, total);
+        }
+    }
+
+    /**
+     * Tells the update dialog, if it is shown, that the update is done.
+     */
+    public void updateUpdateDialog(){
+        if (updateDialog == null){
+            return;
+        }
+        updateTimer.stop();
+        updateDialog.changeTextToDone();
+        updateDialog = null;
+        updateTimer = null;
+    }
+
+    /**
+     * Renders the cells of the schedule table, in grey for programs that
+     * have already ended.
+     */
+    private static class ScheduleRenderer extends DefaultTableCellRenderer {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ScheduleTableModel model;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param model the model of the schedule table.
+         */
+        private ScheduleRenderer(ScheduleTableModel model){
+            this.model = model;
+        }
+
+        /**
+         * Returns the component rendering a cell.
+         *
+         * @param table the table.
+         * @param value the value of the cell.
+         * @param isSelected true if the cell is selected.
+         * @param hasFocus true if the cell has focus.
+         * @param row the row of the cell in the view.
+         * @param column the column of the cell in the view.
+         * @return the component.
+         */
+        @Override
+        public Component getTableCellRendererComponent(JTable table,
+                Object value, boolean isSelected, boolean hasFocus,
+                int row, int column){
+            Component component = super.getTableCellRendererComponent(table,
+                    value, isSelected, hasFocus, row, column);
+            if (!isSelected){
+                boolean ended = model.hasEnded(
+                        table.convertRowIndexToModel(row),
+                        System.currentTimeMillis());
+                component.setForeground(ended ? Color.GRAY :
+                        table.getForeground());
+            }
+            return component;
+        }
+    }
 }
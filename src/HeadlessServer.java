@@ -0,0 +1,392 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the channel refresh without a GUI and serves the result as JSON over
+ * HTTP, so that many clients can share one set of requests to the API. The
+ * responses are serialized once per refresh and swapped in as a whole, so
+ * requests only copy prepared bytes. The endpoints are
+ *
+ *     /channels                 all channels
+ *     /channels/{id}/schedule   the schedule of a channel
+ *     /now                      what is broadcasting on every channel
+ *     /search?q=...&limit=...   programs matching a query, best first
+ */
+public class HeadlessServer {
+
+    private static final long MINUTE = 60*1000;
+    private static final int TIME = 60*60;
+    private static final int SEARCH_LIMIT = 50;
+
+    private final ChannelUpdater updater =
+            new ChannelUpdater(new XMLParserSAX());
+    private final RefreshCoordinator coordinator =
+            new RefreshCoordinator(updater);
+    private final HttpServer server;
+    private final ScheduledExecutorService refresher =
+            Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicReference<Responses> responses =
+            new AtomicReference<>(new Responses(new ArrayList<>()));
+    private final AtomicReference<NowPlaying> nowPlaying =
+            new AtomicReference<>(new NowPlaying(0, new byte[0]));
+
+    /**
+     * Constructor of the class.
+     *
+     * @param port the port to serve on.
+     * @throws IOException if the server could not be created.
+     */
+    public HeadlessServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(Executors.newFixedThreadPool(
+                2*Runtime.getRuntime().availableProcessors()));
+        server.createContext("/channels", this::channels);
+        server.createContext("/now", this::now);
+        server.createContext("/search", this::search);
+    }
+
+    /**
+     * Starts serving and refreshing the channels every hour. The channels
+     * of the last snapshot are served until the first refresh is done. The
+     * first refresh fetches everything that was not in the snapshot, the
+     * following ones only expired schedules.
+     */
+    public void start(){
+        ArrayList<Channel> restored = updater.restoreSnapshot();
+        if (restored != null){
+            responses.set(new Responses(restored));
+        }
+        server.start();
+        refresher.scheduleAtFixedRate(new Runnable() {
+            private boolean firstUpdate = true;
+
+            @Override
+            public void run() {
+                refresh(!firstUpdate || restored != null);
+                firstUpdate = false;
+            }
+        }, 0, TIME, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Refreshes the channels through the refresh coordinator, waits for all
+     * schedules to load and swaps in the new responses.
+     *
+     * @param incremental true to only fetch expired schedules.
+     */
+    private void refresh(boolean incremental){
+        try {
+            ArrayList<Channel> channels =
+                    coordinator.refresh(incremental).getFinished().join();
+            if (channels == null){
+                return;
+            }
+            responses.set(new Responses(channels));
+            nowPlaying.set(new NowPlaying(0, new byte[0]));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Answers requests for channels and schedules.
+     *
+     * @param exchange the request.
+     * @throws IOException if the response could not be sent.
+     */
+    private void channels(HttpExchange exchange) throws IOException {
+        Responses current = responses.get();
+        String path = exchange.getRequestURI().getPath();
+
+        if (path.equals("/channels") || path.equals("/channels/")){
+            respond(exchange, current.channels);
+            return;
+        }
+
+        String[] parts = path.split("/");
+        if (parts.length == 4 && parts[3].equals("schedule")){
+            try {
+                byte[] schedule = current.schedules.get(
+                        Integer.parseInt(parts[2]));
+                if (schedule != null){
+                    respond(exchange, schedule);
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                // Answered as not found below.
+            }
+        }
+        respond(exchange, null);
+    }
+
+    /**
+     * Answers requests for what is broadcasting now. The response is
+     * serialized at most once a minute.
+     *
+     * @param exchange the request.
+     * @throws IOException if the response could not be sent.
+     */
+    private void now(HttpExchange exchange) throws IOException {
+        long minute = System.currentTimeMillis()/MINUTE;
+        NowPlaying current = nowPlaying.get();
+        if (current.minute != minute){
+            NowPlaying updated = new NowPlaying(minute,
+                    serializeNowPlaying(minute*MINUTE));
+            nowPlaying.compareAndSet(current, updated);
+            current = updated;
+        }
+        respond(exchange, current.body);
+    }
+
+    /**
+     * Answers searches. Searches are not prepared in advance but answered
+     * from the search index.
+     *
+     * @param exchange the request.
+     * @throws IOException if the response could not be sent.
+     */
+    private void search(HttpExchange exchange) throws IOException {
+        String query = "";
+        int limit = SEARCH_LIMIT;
+        String parameters = exchange.getRequestURI().getRawQuery();
+        if (parameters != null){
+            for (String parameter: parameters.split("&")){
+                int separator = parameter.indexOf('=');
+                if (separator < 0){
+                    continue;
+                }
+                String name = parameter.substring(0, separator);
+                String value = URLDecoder.decode(
+                        parameter.substring(separator + 1),
+                        StandardCharsets.UTF_8);
+                if (name.equals("q")){
+                    query = value;
+                }
+                else if (name.equals("limit")){
+                    try {
+                        limit = Math.min(SEARCH_LIMIT,
+                                Integer.parseInt(value));
+                    } catch (NumberFormatException e) {
+                        // The default limit is used.
+                    }
+                }
+            }
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (SearchIndex.Hit hit:
+                updater.getSearchIndex().search(query, limit)){
+            if (json.length() > 1){
+                json.append(',');
+            }
+            json.append("{\"channelId\":").append(hit.getChannel().getId())
+                    .append(",\"channel\":");
+            appendString(json, hit.getChannel().getName());
+            json.append(",\"score\":").append(hit.getScore())
+                    .append(",\"program\":");
+            appendProgram(json, hit.getSchedule(), hit.getPosition());
+            json.append('}');
+        }
+        respond(exchange, json.append(']').toString()
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a prepared JSON response.
+     *
+     * @param exchange the request.
+     * @param body the response, or null to answer 404 Not Found.
+     * @throws IOException if the response could not be sent.
+     */
+    private static void respond(HttpExchange exchange, byte[] body)
+            throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")){
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (body == null){
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                    "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()){
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Serializes what is broadcasting on every channel at a time.
+     *
+     * @param time the time in milliseconds since the epoch.
+     * @return the response.
+     */
+    private byte[] serializeNowPlaying(long time){
+        StringBuilder json = new StringBuilder("[");
+        for (ProgramGuide.Airing airing:
+                updater.getGuide().airingAt(time)){
+            if (json.length() > 1){
+                json.append(',');
+            }
+            json.append("{\"channelId\":").append(airing.getChannel().getId())
+                    .append(",\"channel\":");
+            appendString(json, airing.getChannel().getName());
+            json.append(",\"program\":");
+            appendProgram(json, airing.getSchedule(), airing.getIndex());
+            json.append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a program as a JSON object, reading it from the columns of its
+     * schedule.
+     *
+     * @param json the JSON being built.
+     * @param schedule the schedule of the program.
+     * @param index the position of the program in the schedule.
+     */
+    private static void appendProgram(StringBuilder json, Schedule schedule,
+                                      int index){
+        json.append("{\"episodeId\":").append(schedule.getEpisodeId(index))
+                .append(",\"title\":");
+        appendString(json, schedule.getTitle(index));
+        json.append(",\"subtitle\":");
+        appendString(json, schedule.getSubtitle(index));
+        json.append(",\"name\":");
+        appendString(json, schedule.getName(index));
+        json.append(",\"description\":");
+        appendString(json, schedule.getDescription(index));
+        json.append(",\"start\":").append(schedule.getStartTime(index))
+                .append(",\"end\":").append(schedule.getEndTime(index))
+                .append(",\"imageURL\":");
+        appendString(json, schedule.getImageURL(index));
+        json.append('}');
+    }
+
+    /**
+     * Appends a string as a JSON string, or null.
+     *
+     * @param json the JSON being built.
+     * @param value the string, may be null.
+     */
+    private static void appendString(StringBuilder json, String value){
+        if (value == null){
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch (c){
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20){
+                        json.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * The serialized responses of one refresh.
+     */
+    private static class Responses {
+
+        private final byte[] channels;
+        private final Map<Integer, byte[]> schedules;
+
+        /**
+         * Constructor of the class. Serializes the channel list and the
+         * schedule of every channel.
+         *
+         * @param channelList the channels.
+         */
+        private Responses(List<Channel> channelList){
+            StringBuilder json = new StringBuilder("[");
+            HashMap<Integer, byte[]> scheduleMap = new HashMap<>();
+            for (Channel channel: channelList){
+                if (json.length() > 1){
+                    json.append(',');
+                }
+                json.append("{\"id\":").append(channel.getId())
+                        .append(",\"name\":");
+                appendString(json, channel.getName());
+                json.append('}');
+
+                StringBuilder schedule = new StringBuilder("[");
+                Schedule loaded = channel.getLoadedSchedule();
+                for (int i = 0; i < loaded.size(); i++){
+                    if (schedule.length() > 1){
+                        schedule.append(',');
+                    }
+                    appendProgram(schedule, loaded, i);
+                }
+                scheduleMap.put(channel.getId(), schedule.append(']')
+                        .toString().getBytes(StandardCharsets.UTF_8));
+            }
+            channels = json.append(']').toString()
+                    .getBytes(StandardCharsets.UTF_8);
+            schedules = Collections.unmodifiableMap(scheduleMap);
+        }
+    }
+
+    /**
+     * The serialized response of what is broadcasting during one minute.
+     */
+    private static class NowPlaying {
+
+        private final long minute;
+        private final byte[] body;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param minute the minute since the epoch.
+         * @param body the response.
+         */
+        private NowPlaying(long minute, byte[] body){
+            this.minute = minute;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in microseconds with a fixed number of buckets.
+ * Every power of two is split into four buckets, so that a percentile is
+ * off by at most a quarter of its value. Recording a value only increments
+ * counters and never allocates, so it can be done on every request and
+ * every parse from any thread.
+ */
+public class Histogram implements HistogramMXBean {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS*(64 - SUB_BUCKET_BITS);
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructor of the class.
+     *
+     * @param name the name of the histogram.
+     */
+    public Histogram(String name){
+        this.name = name;
+    }
+
+    /**
+     * Records the time passed since a start time.
+     *
+     * @param startNanos the start time given by System.nanoTime().
+     */
+    public void recordSince(long startNanos){
+        record((System.nanoTime() - startNanos)/1000);
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param micros the duration in microseconds, negative durations are
+     *               recorded as zero.
+     */
+    public void record(long micros){
+        long value = Math.max(0, micros);
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the name of the histogram.
+     *
+     * @return the name.
+     */
+    @Override
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return the count.
+     */
+    @Override
+    public long getCount(){
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded durations.
+     *
+     * @return the mean in milliseconds, or 0 if nothing is recorded.
+     */
+    @Override
+    public double getMean(){
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum()/1000.0/n;
+    }
+
+    /**
+     * Returns the median of the recorded durations.
+     *
+     * @return the median in milliseconds.
+     */
+    @Override
+    public double getP50(){
+        return percentile(0.5);
+    }
+
+    /**
+     * Returns the 90th percentile of the recorded durations.
+     *
+     * @return the percentile in milliseconds.
+     */
+    @Override
+    public double getP90(){
+        return percentile(0.9);
+    }
+
+    /**
+     * Returns the 99th percentile of the recorded durations.
+     *
+     * @return the percentile in milliseconds.
+     */
+    @Override
+    public double getP99(){
+        return percentile(0.99);
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return the duration in milliseconds.
+     */
+    @Override
+    public double getMax(){
+        return max.get()/1000.0;
+    }
+
+    /**
+     * Returns a percentile of the recorded durations, as the upper bound of
+     * the bucket it falls in but never more than the longest duration.
+     *
+     * @param fraction the percentile as a fraction between 0 and 1.
+     * @return the percentile in milliseconds, or 0 if nothing is recorded.
+     */
+    public double percentile(double fraction){
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            total += buckets.get(i);
+        }
+        if (total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction*total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            seen += buckets.get(i);
+            if (seen >= rank){
+                return Math.min(upperBound(i), max.get())/1000.0;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns a one line summary of the histogram.
+     *
+     * @return the summary.
+     */
+    @Override
+    public String toString(){
+        return String.format("%s: n=%d mean=%.1fms p50=%.1fms p90=%.1fms " +
+                        "p99=%.1fms max=%.1fms", name, getCount(), getMean(),
+                getP50(), getP90(), getP99(), getMax());
+    }
+
+    /**
+     * Returns the bucket of a value. Values below SUB_BUCKETS have a bucket
+     * each, larger values share a bucket with the values that have the same
+     * highest bits.
+     *
+     * @param value the value, not negative.
+     * @return the index of the bucket.
+     */
+    private static int bucket(long value){
+        if (value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift*SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value of a bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the largest value.
+     */
+    private static long upperBound(int bucket){
+        if (bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = bucket/SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * The management interface of a Histogram, for reading it over JMX.
+ */
+public interface HistogramMXBean {
+
+    /**
+     * Returns the name of the histogram.
+     *
+     * @return the name.
+     */
+    String getName();
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return the count.
+     */
+    long getCount();
+
+    /**
+     * Returns the mean of the recorded durations.
+     *
+     * @return the mean in milliseconds.
+     */
+    double getMean();
+
+    /**
+     * Returns the median of the recorded durations.
+     *
+     * @return the median in milliseconds.
+     */
+    double getP50();
+
+    /**
+     * Returns the 90th percentile of the recorded durations.
+     *
+     * @return the percentile in milliseconds.
+     */
+    double getP90();
+
+    /**
+     * Returns the 99th percentile of the recorded durations.
+     *
+     * @return the percentile in milliseconds.
+     */
+    double getP99();
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return the duration in milliseconds.
+     */
+    double getMax();
+}
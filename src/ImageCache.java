@@ -0,0 +1,391 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches program images in the background. Images are scaled down to the
+ * size they are shown in and kept in a memory cache limited by size, with a
+ * disk cache of the scaled images behind it. The disk cache is limited by
+ * size too, and images older than a week are fetched again. Concurrent
+ * requests for the same image share one download. Images are downloaded
+ * with the HTTP client and timeouts of the schedule requests.
+ */
+public class ImageCache {
+
+    private static final long MAX_DISK_AGE = TimeUnit.DAYS.toMillis(7);
+    private static final int OK = 200;
+
+    private final HttpClient client;
+    private final FetchPolicy policy;
+    private final int width;
+    private final int height;
+    private final long maxBytes;
+    private final long maxDiskBytes;
+    private final File directory;
+
+    private final LinkedHashMap<String, BufferedImage> memory =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+    private final ConcurrentHashMap<String, CompletableFuture<Image>> pending =
+            new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private Image placeholder;
+
+    /**
+     * Constructor of the class. Uses the directory given by the system
+     * property "radioinfo.images", or ".radioinfo/images" in the home
+     * directory of the user, for the disk cache.
+     *
+     * @param client the HTTP client to download the images with.
+     * @param policy the timeouts of the downloads.
+     * @param width the largest width of a shown image.
+     * @param height the largest height of a shown image.
+     * @param maxBytes the largest number of bytes of images kept in memory.
+     * @param maxDiskBytes the largest number of bytes of images kept on
+     *                     disk.
+     */
+    public ImageCache(HttpClient client, FetchPolicy policy, int width,
+                      int height, long maxBytes, long maxDiskBytes){
+        this(client, policy, width, height, maxBytes, maxDiskBytes,
+                new File(System.getProperty("radioinfo.images",
+                        System.getProperty("user.home")+File.separator+
+                                ".radioinfo"+File.separator+"images")));
+    }
+
+    /**
+     * Constructor of the class.
+     *
+     * @param client the HTTP client to download the images with.
+     * @param policy the timeouts of the downloads.
+     * @param width the largest width of a shown image.
+     * @param height the largest height of a shown image.
+     * @param maxBytes the largest number of bytes of images kept in memory.
+     * @param maxDiskBytes the largest number of bytes of images kept on
+     *                     disk.
+     * @param directory the directory of the disk cache.
+     */
+    public ImageCache(HttpClient client, FetchPolicy policy, int width,
+                      int height, long maxBytes, long maxDiskBytes,
+                      File directory){
+        this.client = client;
+        this.policy = policy;
+        this.width = width;
+        this.height = height;
+        this.maxBytes = maxBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            System.err.println("Could not create image directory "+directory);
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable,
+                    "ImageCache-"+threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::trimDisk);
+    }
+
+    /**
+     * Returns the image shown while the real image is loading.
+     *
+     * @return the placeholder image, or null if it could not be read.
+     */
+    public synchronized Image getPlaceholder(){
+        if (placeholder == null){
+            URL resource = ImageCache.class.getResource("placeholder.png");
+            if (resource != null){
+                try {
+                    BufferedImage image = ImageIO.read(resource);
+                    if (image != null){
+                        placeholder = scale(image);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return placeholder;
+    }
+
+    /**
+     * Returns an image, fetching it in the background if it is not cached.
+     *
+     * @param url the URL of the image.
+     * @return a future completed with the scaled image, or with null if the
+     *         image could not be read.
+     */
+    public CompletableFuture<Image> getImage(String url){
+        if (url == null || url.isEmpty()){
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (memory){
+            BufferedImage image = memory.get(url);
+            if (image != null){
+                return CompletableFuture.completedFuture(image);
+            }
+        }
+
+        CompletableFuture<Image> future = new CompletableFuture<>();
+        CompletableFuture<Image> loading = pending.putIfAbsent(url, future);
+        if (loading != null){
+            return loading;
+        }
+
+        executor.execute(() -> {
+            Image image = null;
+            try {
+                image = load(url);
+            } finally {
+                pending.remove(url, future);
+                future.complete(image);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reads an image from the disk cache, or downloads, scales and stores
+     * it if it is not on disk or is too old.
+     *
+     * @param url the URL of the image.
+     * @return the scaled image, or null if it could not be read.
+     */
+    private Image load(String url){
+        File file = new File(directory, hash(url)+".png");
+        BufferedImage image = null;
+        try {
+            long now = System.currentTimeMillis();
+            if (file.isFile() && now - file.lastModified() < MAX_DISK_AGE){
+                image = ImageIO.read(file);
+            }
+            if (image == null){
+                BufferedImage original = download(url);
+                if (original == null){
+                    return null;
+                }
+                image = scale(original);
+                store(file, image);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        remember(url, image);
+        return image;
+    }
+
+    /**
+     * Downloads and decodes an image. The whole download, headers and body,
+     * must finish within the read timeout of the fetch policy.
+     *
+     * @param url the URL of the image.
+     * @return the image, or null if the response was not an image.
+     * @throws IOException if the image could not be downloaded.
+     */
+    private BufferedImage download(String url) throws IOException {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(policy.getReadTimeout()))
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not an image URL: "+url, e);
+        }
+
+        CompletableFuture<HttpResponse<byte[]>> future = client.sendAsync(
+                request, HttpResponse.BodyHandlers.ofByteArray());
+        HttpResponse<byte[]> response;
+        try {
+            response = future.get(policy.getReadTimeout(),
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading "+url, e);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("Timed out downloading "+url, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not download "+url, e.getCause());
+        }
+
+        if (response.statusCode() != OK){
+            return null;
+        }
+        return ImageIO.read(new ByteArrayInputStream(response.body()));
+    }
+
+    /**
+     * Writes a scaled image to the disk cache. The image is written to a
+     * temporary file that is then moved into place, so that a reader never
+     * sees a partly written image. Removes the oldest images if the disk
+     * cache has grown past its size limit.
+     *
+     * @param file the file of the image.
+     * @param image the scaled image.
+     * @throws IOException if the image could not be written.
+     */
+    private void store(File file, BufferedImage image) throws IOException {
+        long previous = file.length();
+        File temp = File.createTempFile("image", ".tmp", directory);
+        try {
+            ImageIO.write(image, "png", temp);
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+
+        boolean full;
+        synchronized (this){
+            diskBytes += file.length() - previous;
+            full = diskBytes > maxDiskBytes;
+        }
+        if (full){
+            trimDisk();
+        }
+    }
+
+    /**
+     * Removes images older than the maximum age from the disk cache, and
+     * then the least recently written images until the cache is within its
+     * size limit.
+     */
+    private synchronized void trimDisk(){
+        File[] files = directory.listFiles((dir, name) ->
+                name.endsWith(".png"));
+        if (files == null){
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for (File file: files){
+            total += file.length();
+        }
+        for (File file: files){
+            if (total <= maxDiskBytes &&
+                    now - file.lastModified() < MAX_DISK_AGE){
+                break;
+            }
+            long length = file.length();
+            if (file.delete()){
+                total -= length;
+            }
+        }
+        diskBytes = total;
+    }
+
+    /**
+     * Puts an image in the memory cache and removes the least recently used
+     * images until the cache is within its size limit.
+     *
+     * @param url the URL of the image.
+     * @param image the image.
+     */
+    private void remember(String url, BufferedImage image){
+        synchronized (memory){
+            BufferedImage previous = memory.put(url, image);
+            if (previous != null){
+                memoryBytes -= bytes(previous);
+            }
+            memoryBytes += bytes(image);
+
+            Iterator<Map.Entry<String, BufferedImage>> iterator =
+                    memory.entrySet().iterator();
+            while (memoryBytes > maxBytes && iterator.hasNext()){
+                memoryBytes -= bytes(iterator.next().getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Scales an image down to fit the shown size, keeping its proportions.
+     * Smaller images are not scaled up.
+     *
+     * @param original the image.
+     * @return the scaled image.
+     */
+    private BufferedImage scale(BufferedImage original){
+        double factor = Math.min(1.0, Math.min(
+                (double) width/original.getWidth(),
+                (double) height/original.getHeight()));
+        int scaledWidth = Math.max(1, (int) (original.getWidth()*factor));
+        int scaledHeight = Math.max(1, (int) (original.getHeight()*factor));
+
+        BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(original, 0, 0, scaledWidth, scaledHeight, null);
+        graphics.dispose();
+
+        return scaled;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by an image.
+     *
+     * @param image the image.
+     * @return the number of bytes.
+     */
+    private static long bytes(BufferedImage image){
+        return 4L*image.getWidth()*image.getHeight();
+    }
+
+    /**
+     * Returns a file name safe hash of a URL.
+     *
+     * @param url the URL.
+     * @return the hash as hexadecimal digits.
+     */
+    private static String hash(String url){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length*2);
+            for (byte b: digest){
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
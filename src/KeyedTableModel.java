@@ -0,0 +1,143 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A table model whose rows are identified by a key, so that replacing the
+ * rows only fires events for the rows that were actually removed, added or
+ * changed. Tables keep their selection and scroll position when the rows
+ * are refreshed.
+ * @param <R> the type of the rows.
+ */
+public abstract class KeyedTableModel<R> extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<R> rows = new ArrayList<>();
+
+    /**
+     * Returns the key identifying a row.
+     *
+     * @param row the row.
+     * @return the key.
+     */
+    protected abstract Object key(R row);
+
+    /**
+     * Returns whether a row with the same key shows anything different.
+     *
+     * @param previous the row shown so far.
+     * @param updated the row replacing it.
+     * @return true if the row should be repainted.
+     */
+    protected abstract boolean changed(R previous, R updated);
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Returns a row.
+     *
+     * @param index the index of the row in the model.
+     * @return the row.
+     */
+    protected R getRow(int index){
+        return rows.get(index);
+    }
+
+    /**
+     * Replaces all rows at once, firing a single event. Used when the rows
+     * have nothing in common with the previous rows.
+     *
+     * @param updated the new rows.
+     */
+    protected void replaceRows(List<R> updated){
+        rows.clear();
+        rows.addAll(updated);
+        fireTableDataChanged();
+    }
+
+    /**
+     * Replaces the rows, firing an event for every row that is removed,
+     * added or changed. Rows with the same key are kept in place.
+     *
+     * @param updated the new rows.
+     */
+    protected void updateRows(List<R> updated){
+        HashSet<Object> updatedKeys = new HashSet<>();
+        for (R row: updated){
+            updatedKeys.add(key(row));
+        }
+        HashMap<Object, Integer> remaining = new HashMap<>();
+        for (R row: rows){
+            remaining.merge(key(row), 1, Integer::sum);
+        }
+
+        int index = 0;
+        int next = 0;
+        while (index < rows.size() || next < updated.size()){
+            if (next == updated.size()){
+                remove(index, remaining);
+                continue;
+            }
+            R row = updated.get(next);
+            if (index == rows.size()){
+                insert(index++, row);
+                next++;
+                continue;
+            }
+
+            R current = rows.get(index);
+            Object currentKey = key(current);
+            Object key = key(row);
+            if (currentKey.equals(key)){
+                rows.set(index, row);
+                remaining.merge(currentKey, -1, Integer::sum);
+                if (changed(current, row)){
+                    fireTableRowsUpdated(index, index);
+                }
+                index++;
+                next++;
+            }
+            else if (!updatedKeys.contains(currentKey) ||
+                    remaining.getOrDefault(key, 0) > 0){
+                remove(index, remaining);
+            }
+            else {
+                insert(index++, row);
+                next++;
+            }
+        }
+    }
+
+    /**
+     * Removes a row and fires an event for it.
+     *
+     * @param index the index of the row.
+     * @param remaining the number of rows left to compare, by key.
+     */
+    private void remove(int index, HashMap<Object, Integer> remaining){
+        remaining.merge(key(rows.remove(index)), -1, Integer::sum);
+        fireTableRowsDeleted(index, index);
+    }
+
+    /**
+     * Inserts a row and fires an event for it.
+     *
+     * @param index the index of the row.
+     * @param row the row.
+     */
+    private void insert(int index, R row){
+        rows.add(index, row);
+        fireTableRowsInserted(index, index);
+    }
+}
@@ -0,0 +1,423 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * The metrics of fetching, parsing and refreshing, so that a slow refresh
+ * can be traced to the network, the parser or the user interface. The
+ * metrics are kept in static counters and histograms that are updated
+ * without allocating, and are exposed as MBeans under the domain
+ * "radioinfo" and in a summary that is logged periodically once start() has
+ * been called.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    private static final String DOMAIN = "radioinfo";
+    private static final long DEFAULT_SUMMARY_INTERVAL = 10;
+
+    /**
+     * The latency of channel list requests, until the headers are received.
+     */
+    public static final Histogram CHANNELS_REQUEST =
+            new Histogram("request.channels");
+
+    /**
+     * The latency of schedule requests, until the headers are received.
+     */
+    public static final Histogram SCHEDULE_REQUEST =
+            new Histogram("request.scheduledepisodes");
+
+    /**
+     * The processor time spent reading and parsing channel lists.
+     */
+    public static final Histogram CHANNELS_PARSE =
+            new Histogram("parse.channels");
+
+    /**
+     * The processor time spent reading and parsing schedules.
+     */
+    public static final Histogram SCHEDULE_PARSE =
+            new Histogram("parse.scheduledepisodes");
+
+    /**
+     * The time from asking for an update until the channel list is shown.
+     */
+    public static final Histogram CHANNEL_LIST_REFRESH =
+            new Histogram("refresh.channellist");
+
+    /**
+     * The time from asking for an update until all schedules are loaded.
+     */
+    public static final Histogram REFRESH = new Histogram("refresh.total");
+
+    private static final Histogram[] HISTOGRAMS = {CHANNELS_REQUEST,
+            SCHEDULE_REQUEST, CHANNELS_PARSE, SCHEDULE_PARSE,
+            CHANNEL_LIST_REFRESH, REFRESH};
+
+    private static final LongAdder BYTES_RECEIVED = new LongAdder();
+    private static final LongAdder NOT_MODIFIED = new LongAdder();
+    private static final LongAdder ELEMENTS = new LongAdder();
+    private static final LongAdder EPISODES = new LongAdder();
+    private static final LongAdder CHANNELS = new LongAdder();
+    private static final LongAdder FAILURES = new LongAdder();
+    private static final LongAdder RETRIES = new LongAdder();
+    private static final LongAdder HEDGES = new LongAdder();
+    private static final LongAdder DEADLINE_MISSES = new LongAdder();
+    private static final LongAdder COALESCED = new LongAdder();
+    private static final LongAdder CANCELLED = new LongAdder();
+    private static final ConcurrentHashMap<Integer, LongAdder>
+            CHANNEL_FAILURES = new ConcurrentHashMap<>();
+
+    private static final Metrics INSTANCE = new Metrics();
+    private static final ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean();
+    private static final Logger LOGGER = Logger.getLogger("RadioInfo");
+
+    private static boolean started = false;
+
+    /**
+     * Constructor of the class.
+     */
+    private Metrics(){
+    }
+
+    /**
+     * Returns whether start() has been called, so that counts nobody can
+     * read need not be kept.
+     *
+     * @return true if the metrics are exposed.
+     */
+    public static synchronized boolean isStarted(){
+        return started;
+    }
+
+    /**
+     * Registers the MBeans and starts logging a summary at the interval in
+     * minutes given by the system property "radioinfo.metrics.interval", or
+     * every ten minutes. An interval of 0 turns the log off. Does nothing
+     * if already started.
+     */
+    public static synchronized void start(){
+        if (started){
+            return;
+        }
+        started = true;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE,
+                    new ObjectName(DOMAIN+":type=Metrics"));
+            for (Histogram histogram: HISTOGRAMS){
+                server.registerMBean(histogram, new ObjectName(DOMAIN+
+                        ":type=Histogram,name="+histogram.getName()));
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+
+        long interval = Long.getLong("radioinfo.metrics.interval",
+                DEFAULT_SUMMARY_INTERVAL);
+        if (interval > 0){
+            ScheduledExecutorService executor =
+                    Executors.newSingleThreadScheduledExecutor(task -> {
+                        Thread thread = new Thread(task, "metrics-summary");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.scheduleAtFixedRate(() ->
+                            LOGGER.info(INSTANCE.getSummary()),
+                    interval, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Returns the processor time used by the current thread, for timing
+     * work that is interleaved with waiting for the network. Falls back to
+     * System.nanoTime() if the JVM does not measure thread time.
+     *
+     * @return the time in nanoseconds.
+     */
+    public static long cpuTime(){
+        if (THREADS.isCurrentThreadCpuTimeSupported()){
+            return THREADS.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Counts received response body bytes, as sent over the network before
+     * decompression.
+     *
+     * @param bytes the number of bytes.
+     */
+    public static void bytesReceived(long bytes){
+        BYTES_RECEIVED.add(bytes);
+    }
+
+    /**
+     * Counts a schedule request answered with "not modified".
+     */
+    public static void notModified(){
+        NOT_MODIFIED.increment();
+    }
+
+    /**
+     * Counts the elements of a parsed document.
+     *
+     * @param elements the number of elements.
+     */
+    public static void elementsParsed(int elements){
+        ELEMENTS.add(elements);
+    }
+
+    /**
+     * Counts the episodes of a parsed schedule.
+     *
+     * @param episodes the number of episodes.
+     */
+    public static void episodesParsed(int episodes){
+        EPISODES.add(episodes);
+    }
+
+    /**
+     * Counts the channels of a parsed channel list.
+     *
+     * @param channels the number of channels.
+     */
+    public static void channelsParsed(int channels){
+        CHANNELS.add(channels);
+    }
+
+    /**
+     * Counts a failed channel list request.
+     */
+    public static void failure(){
+        FAILURES.increment();
+    }
+
+    /**
+     * Counts a failed schedule request of a channel.
+     *
+     * @param channelId the id of the channel.
+     */
+    public static void failure(int channelId){
+        FAILURES.increment();
+        CHANNEL_FAILURES.computeIfAbsent(channelId, id -> new LongAdder())
+                .increment();
+    }
+
+    /**
+     * Counts a request that is sent again after failing.
+     */
+    public static void retried(){
+        RETRIES.increment();
+    }
+
+    /**
+     * Counts a second request sent because the first was slow.
+     */
+    public static void hedged(){
+        HEDGES.increment();
+    }
+
+    /**
+     * Counts a request that was not sent because the refresh budget had run
+     * out.
+     */
+    public static void deadlineMissed(){
+        DEADLINE_MISSES.increment();
+    }
+
+    /**
+     * Counts a refresh or request that joined one already running instead
+     * of being sent.
+     */
+    public static void coalesced(){
+        COALESCED.increment();
+    }
+
+    /**
+     * Counts a queued request that was cancelled by a newer refresh.
+     */
+    public static void cancelled(){
+        CANCELLED.increment();
+    }
+
+    /**
+     * Returns the number of response body bytes received.
+     *
+     * @return the number of bytes.
+     */
+    @Override
+    public long getBytesReceived(){
+        return BYTES_RECEIVED.sum();
+    }
+
+    /**
+     * Returns the number of schedule requests answered with "not modified".
+     *
+     * @return the number of requests.
+     */
+    @Override
+    public long getNotModified(){
+        return NOT_MODIFIED.sum();
+    }
+
+    /**
+     * Returns the number of XML elements parsed.
+     *
+     * @return the number of elements.
+     */
+    @Override
+    public long getElementsParsed(){
+        return ELEMENTS.sum();
+    }
+
+    /**
+     * Returns the number of episodes parsed.
+     *
+     * @return the number of episodes.
+     */
+    @Override
+    public long getEpisodesParsed(){
+        return EPISODES.sum();
+    }
+
+    /**
+     * Returns the number of channels parsed.
+     *
+     * @return the number of channels.
+     */
+    @Override
+    public long getChannelsParsed(){
+        return CHANNELS.sum();
+    }
+
+    /**
+     * Returns the number of requests that failed.
+     *
+     * @return the number of failures.
+     */
+    @Override
+    public long getFailures(){
+        return FAILURES.sum();
+    }
+
+    /**
+     * Returns the number of requests sent again after failing.
+     *
+     * @return the number of retries.
+     */
+    @Override
+    public long getRetries(){
+        return RETRIES.sum();
+    }
+
+    /**
+     * Returns the number of second requests sent because the first was
+     * slow.
+     *
+     * @return the number of hedged requests.
+     */
+    @Override
+    public long getHedges(){
+        return HEDGES.sum();
+    }
+
+    /**
+     * Returns the number of requests not sent because the refresh budget
+     * had run out.
+     *
+     * @return the number of requests.
+     */
+    @Override
+    public long getDeadlineMisses(){
+        return DEADLINE_MISSES.sum();
+    }
+
+    /**
+     * Returns the number of refreshes and requests that joined one already
+     * running.
+     *
+     * @return the number of refreshes and requests.
+     */
+    @Override
+    public long getCoalesced(){
+        return COALESCED.sum();
+    }
+
+    /**
+     * Returns the number of queued requests cancelled by a newer refresh.
+     *
+     * @return the number of requests.
+     */
+    @Override
+    public long getCancelled(){
+        return CANCELLED.sum();
+    }
+
+    /**
+     * Returns the number of failed schedule requests of every channel that
+     * has had a failure.
+     *
+     * @return the failures by channel id, sorted by id.
+     */
+    @Override
+    public Map<Integer, Long> getFailuresByChannel(){
+        TreeMap<Integer, Long> failures = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry:
+                CHANNEL_FAILURES.entrySet()){
+            failures.put(entry.getKey(), entry.getValue().sum());
+        }
+        return failures;
+    }
+
+    /**
+     * Returns a summary of all metrics, one line per histogram.
+     *
+     * @return the summary.
+     */
+    @Override
+    public String getSummary(){
+        StringBuilder summary = new StringBuilder("Metrics: ");
+        summary.append("bytes=").append(getBytesReceived())
+                .append(" notModified=").append(getNotModified())
+                .append(" elements=").append(getElementsParsed())
+                .append(" episodes=").append(getEpisodesParsed())
+                .append(" channels=").append(getChannelsParsed())
+                .append(" failures=").append(getFailures())
+                .append(" retries=").append(getRetries())
+                .append(" hedges=").append(getHedges())
+                .append(" deadlineMisses=").append(getDeadlineMisses())
+                .append(" coalesced=").append(getCoalesced())
+                .append(" cancelled=").append(getCancelled());
+        Map<Integer, Long> failures = getFailuresByChannel();
+        if (!failures.isEmpty()){
+            summary.append(" failuresByChannel=").append(failures);
+        }
+        for (Histogram histogram: HISTOGRAMS){
+            summary.append(System.lineSeparator()).append("  ")
+                    .append(histogram);
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Returns the metrics.
+     *
+     * @return the metrics.
+     */
+    public static Metrics get(){
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Map;
+
+/**
+ * The management interface of the Metrics counters, for reading them over
+ * JMX. The durations are exposed as separate Histogram beans.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Returns the number of response body bytes received.
+     *
+     * @return the number of bytes.
+     */
+    long getBytesReceived();
+
+    /**
+     * Returns the number of schedule requests answered with "not modified".
+     *
+     * @return the number of requests.
+     */
+    long getNotModified();
+
+    /**
+     * Returns the number of XML elements parsed.
+     *
+     * @return the number of elements.
+     */
+    long getElementsParsed();
+
+    /**
+     * Returns the number of episodes parsed.
+     *
+     * @return the number of episodes.
+     */
+    long getEpisodesParsed();
+
+    /**
+     * Returns the number of channels parsed.
+     *
+     * @return the number of channels.
+     */
+    long getChannelsParsed();
+
+    /**
+     * Returns the number of requests that failed.
+     *
+     * @return the number of failures.
+     */
+    long getFailures();
+
+    /**
+     * Returns the number of requests sent again after failing.
+     *
+     * @return the number of retries.
+     */
+    long getRetries();
+
+    /**
+     * Returns the number of second requests sent because the first was
+     * slow.
+     *
+     * @return the number of hedged requests.
+     */
+    long getHedges();
+
+    /**
+     * Returns the number of requests not sent because the refresh budget
+     * had run out.
+     *
+     * @return the number of requests.
+     */
+    long getDeadlineMisses();
+
+    /**
+     * Returns the number of refreshes and requests that joined one already
+     * running.
+     *
+     * @return the number of refreshes and requests.
+     */
+    long getCoalesced();
+
+    /**
+     * Returns the number of queued requests cancelled by a newer refresh.
+     *
+     * @return the number of requests.
+     */
+    long getCancelled();
+
+    /**
+     * Returns the number of failed schedule requests of every channel that
+     * has had a failure.
+     *
+     * @return the failures by channel id.
+     */
+    Map<Integer, Long> getFailuresByChannel();
+
+    /**
+     * Returns a summary of all metrics, the same as is logged periodically.
+     *
+     * @return the summary.
+     */
+    String getSummary();
+}
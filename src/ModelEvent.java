@@ -0,0 +1,55 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for building the model from parsed data: a day's
+ * schedule from its programs, or a channel's schedule from its days
+ * together with the guide and search index.
+ */
+@Name("radioinfo.ModelBuild")
+@Label("Model Build")
+@Category({"RadioInfo", "Refresh"})
+@Description("Building schedules, the guide and the search index")
+public class ModelEvent extends Event {
+
+    private static final EventType TYPE =
+            EventType.getEventType(ModelEvent.class);
+
+    @Label("Cycle")
+    long cycle;
+
+    @Label("Channel")
+    int channel;
+
+    @Label("Step")
+    String step;
+
+    @Label("Programs")
+    int programs;
+
+    /**
+     * Returns whether a running recording has the event enabled.
+     *
+     * @return true if the event is recorded.
+     */
+    static boolean isRecorded(){
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Constructor of the class. Starts timing the step and tags it with the
+     * refresh cycle and channel of the current thread.
+     *
+     * @param step the step of the build.
+     */
+    ModelEvent(String step){
+        this.cycle = RefreshTrace.cycle();
+        this.channel = RefreshTrace.channel();
+        this.step = step;
+        begin();
+    }
+}
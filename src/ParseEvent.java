@@ -0,0 +1,59 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for parsing one document, emitted by the SAX
+ * handlers from the start to the end of the document.
+ */
+@Name("radioinfo.Parse")
+@Label("Parse")
+@Category({"RadioInfo", "Refresh"})
+@Description("Parsing a channel list or a schedule")
+public class ParseEvent extends Event {
+
+    private static final EventType TYPE =
+            EventType.getEventType(ParseEvent.class);
+
+    @Label("Cycle")
+    long cycle;
+
+    @Label("Channel")
+    int channel;
+
+    @Label("Document")
+    String document;
+
+    @Label("Elements")
+    int elements;
+
+    @Label("Items")
+    @Description("The number of channels or episodes in the document")
+    int items;
+
+    /**
+     * Returns whether a running recording has the event enabled.
+     *
+     * @return true if the event is recorded.
+     */
+    static boolean isRecorded(){
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Constructor of the class. Starts timing the parse and tags it with the
+     * refresh cycle and channel of the current thread.
+     *
+     * @param document the kind of document, "channels" or
+     *                 "scheduledepisodes".
+     */
+    ParseEvent(String document){
+        this.cycle = RefreshTrace.cycle();
+        this.channel = RefreshTrace.channel();
+        this.document = document;
+        begin();
+    }
+}
@@ -1,12 +1,6 @@
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.TimeZone;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 /**
  * A class representing a program (a broadcast) from Sveriges Radios open API
@@ -16,98 +10,82 @@ import java.util.TimeZone;
  */
 public class Program {
 
-    private int id;
-    private String name;
+    private Series series;
     private int episodeId;
     private String title;
     private String description;
-    private String startDateString;
-    private String endDateString;
+    private long startTime;
+    private long endTime;
+    private String startDate;
+    private String endDate;
     private String imageURL;
-    private Image image;
     private String subtitle;
 
-    private SimpleDateFormat sourceFormat = new SimpleDateFormat("yyyy-MM-dd" +
-            "'T'HH:mm:ss'Z'");
-    private SimpleDateFormat destFormat = new SimpleDateFormat("yyyy-MM-dd " +
-            "// HH:mm");
-    private TimeZone utc = TimeZone.getTimeZone("UTC");
+    private static final DateTimeFormatter DISPLAY_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd // HH:mm")
+                    .withZone(ZoneId.systemDefault());
 
     /**
-     * Returns a converted date String for the program start time.
+     * Returns a converted date String for the program start time. The
+     * String is created the first time it is asked for.
      *
      * @return a converted date String.
      */
     public String getStartDate() {
-        sourceFormat.setTimeZone(utc);
-        Date convertedDate = null;
-        try {
-            convertedDate = sourceFormat.parse(startDateString);
-        } catch (ParseException e) {
-            System.err.println("Time is in incorrect format");
-            return null;
+        if (startDate == null){
+            startDate = formatTime(startTime);
         }
-        return destFormat.format(convertedDate);
-
+        return startDate;
     }
 
     /**
-     * Returns a converted date String for the program end time.
+     * Returns a converted date String for the program end time. The String
+     * is created the first time it is asked for.
      *
      * @return a converted date String.
      */
     public String getEndDate(){
-        sourceFormat.setTimeZone(utc);
-        Date convertedDate = null;
-        try {
-            convertedDate = sourceFormat.parse(endDateString);
-        } catch (ParseException e) {
-            System.err.println("Time is in incorrect format");
-            return null;
+        if (endDate == null){
+            endDate = formatTime(endTime);
         }
-        return destFormat.format(convertedDate);
-
+        return endDate;
     }
 
     /**
-     * Returns the program image fetched from the image URL.
+     * Converts a time to the date String shown for programs.
      *
-     * @return the image as an Image object.
+     * @param time the time in milliseconds since the epoch.
+     * @return a converted date String.
      */
-    public Image getImage(){
-        URL url = null;
-        try {
-            url = new URL(getImageURL());
-        } catch (MalformedURLException e) {
-            return null;
-        }
+    public static String formatTime(long time){
+        return DISPLAY_FORMAT.format(Instant.ofEpochMilli(time));
+    }
 
-        if (image == null){
-            try {
-                image = ImageIO.read(url);
-            } catch (IOException e) {
-                return null;
-            }
-        }
-        return image;
+    /**
+     * Returns the program start time.
+     *
+     * @return the start time in milliseconds since the epoch.
+     */
+    public long getStartTime(){
+        return startTime;
     }
 
     /**
-     * Sets the id of the program.
+     * Returns the program end time.
      *
-     * @param id the id to set to.
+     * @return the end time in milliseconds since the epoch.
      */
-    public void setId(int id) {
-        this.id = id;
+    public long getEndTime(){
+        return endTime;
     }
 
     /**
-     * Sets the name of the program.
+     * Sets the series of the program.
      *
-     * @param name the name to set to.
+     * @param series the series to set to.
      */
-    public void setName(String name) {
-        this.name = name;
+    public void setSeries(Series series) {
+        this.series = series;
     }
 
     /**
@@ -138,21 +116,23 @@ public class Program {
     }
 
     /**
-     * Sets the start date string for the program.
+     * Sets the start time of the program.
      *
-     * @param startDateString the start date to set to.
+     * @param startTime the start time in milliseconds since the epoch.
      */
-    public void setStartDateString(String startDateString) {
-        this.startDateString = startDateString;
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+        this.startDate = null;
     }
 
     /**
-     * Sets the end date string of the program.
+     * Sets the end time of the program.
      *
-     * @param endDateString the end date to set to.
+     * @param endTime the end time in milliseconds since the epoch.
      */
-    public void setEndDateString(String endDateString) {
-        this.endDateString = endDateString;
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+        this.endDate = null;
     }
 
     /**
@@ -182,13 +162,31 @@ public class Program {
         return subtitle;
     }
 
+    /**
+     * Returns the id of the program.
+     *
+     * @return the id of the program.
+     */
+    public int getId() {
+        return series != null ? series.getId() : 0;
+    }
+
+    /**
+     * Returns the episode id of the program.
+     *
+     * @return the episode id of the program.
+     */
+    public int getEpisodeId() {
+        return episodeId;
+    }
+
     /**
      * Returns the name of the program.
      *
      * @return the name of the program.
      */
     public String getName() {
-        return name;
+        return series != null ? series.getName() : null;
     }
 
     /**
@@ -215,6 +213,14 @@ public class Program {
         return imageURL;
     }
 
+    /**
+     * Returns the series of the program.
+     * @return the series, or null if the program has none.
+     */
+    public Series getSeries() {
+        return series;
+    }
+
     /**
      * Returns all attributes as a String. Used for debugging.
      *
@@ -222,11 +228,11 @@ public class Program {
      */
     @Override
     public String toString() {
-        return "ID: "+id+" Name: "+name+" EpisodeID: "+episodeId+
+        return "ID: "+getId()+" Name: "+getName()+" EpisodeID: "+episodeId+
                 "\n Title: "+title+
-                "\n Description: "+description+
-                "\n StartDate: "+startDateString+
-                "\n endDate: "+endDateString+
-                "\n ImageURL: "+imageURL+"\n";
+                "\n Description: "+getDescription()+
+                "\n StartDate: "+Instant.ofEpochMilli(startTime)+
+                "\n endDate: "+Instant.ofEpochMilli(endTime)+
+                "\n ImageURL: "+getImageURL()+"\n";
     }
 }
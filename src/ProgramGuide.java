@@ -0,0 +1,302 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A time index over the schedules of all channels, answering what is
+ * broadcasting at a time and what starts within a time window across every
+ * channel. Programs are stored in time buckets covering a fixed number of
+ * minutes; every program is in each bucket its broadcast overlaps. The
+ * buckets of one channel are replaced when its schedule is updated, without
+ * touching the other channels. Buckets are replaced as a whole, so queries
+ * never wait for updates.
+ */
+public class ProgramGuide {
+
+    private static final long MINUTE = 60*1000;
+    private static final Airing[] NO_AIRINGS = new Airing[0];
+    private static final Comparator<Airing> START_ORDER =
+            Comparator.comparingLong(Airing::getStartTime);
+
+    private final long bucketSize;
+    private final ConcurrentHashMap<Long, Airing[]> buckets =
+            new ConcurrentHashMap<>();
+    private final HashMap<Integer, Schedule> schedules = new HashMap<>();
+    private final HashMap<Integer, Channel> channels = new HashMap<>();
+
+    /**
+     * Constructor of the class. Uses buckets of fifteen minutes.
+     */
+    public ProgramGuide(){
+        this(15);
+    }
+
+    /**
+     * Constructor of the class.
+     *
+     * @param bucketMinutes the number of minutes covered by each bucket.
+     */
+    public ProgramGuide(int bucketMinutes){
+        if (bucketMinutes < 1){
+            throw new IllegalArgumentException("bucketMinutes must be at " +
+                    "least 1, was "+bucketMinutes);
+        }
+        this.bucketSize = bucketMinutes*MINUTE;
+    }
+
+    /**
+     * Replaces the programs of a channel with its current schedule. Does
+     * nothing if neither the channel nor its schedule has changed since the
+     * last update.
+     *
+     * @param channel the channel.
+     */
+    public synchronized void update(Channel channel){
+        Schedule schedule = channel.getLoadedSchedule();
+        Schedule previous = schedules.put(channel.getId(), schedule);
+        if (channels.put(channel.getId(), channel) == channel &&
+                previous == schedule){
+            return;
+        }
+
+        HashMap<Long, List<Airing>> added = new HashMap<>();
+        for (int i = 0; i < schedule.size(); i++){
+            Airing airing = new Airing(channel, schedule, i);
+            for (long bucket = firstBucket(schedule, i);
+                 bucket <= lastBucket(schedule, i); bucket++){
+                added.computeIfAbsent(bucket, key -> new ArrayList<>())
+                        .add(airing);
+            }
+        }
+
+        HashSet<Long> changed = new HashSet<>(added.keySet());
+        if (previous != null){
+            for (int i = 0; i < previous.size(); i++){
+                for (long bucket = firstBucket(previous, i);
+                     bucket <= lastBucket(previous, i); bucket++){
+                    changed.add(bucket);
+                }
+            }
+        }
+        for (long bucket: changed){
+            replaceBucket(bucket, channel.getId(), added.get(bucket));
+        }
+    }
+
+    /**
+     * Removes all channels but the given ones from the guide.
+     *
+     * @param kept the channels to keep.
+     */
+    public synchronized void retainChannels(Collection<Channel> kept){
+        HashSet<Integer> ids = new HashSet<>();
+        for (Channel channel: kept){
+            ids.add(channel.getId());
+        }
+
+        Iterator<Map.Entry<Integer, Schedule>> iterator =
+                schedules.entrySet().iterator();
+        while (iterator.hasNext()){
+            Map.Entry<Integer, Schedule> entry = iterator.next();
+            if (ids.contains(entry.getKey())){
+                continue;
+            }
+            iterator.remove();
+            channels.remove(entry.getKey());
+            HashSet<Long> changed = new HashSet<>();
+            Schedule schedule = entry.getValue();
+            for (int i = 0; i < schedule.size(); i++){
+                for (long bucket = firstBucket(schedule, i);
+                     bucket <= lastBucket(schedule, i); bucket++){
+                    changed.add(bucket);
+                }
+            }
+            for (long bucket: changed){
+                replaceBucket(bucket, entry.getKey(), null);
+            }
+        }
+    }
+
+    /**
+     * Returns everything broadcasting at a time on all channels.
+     *
+     * @param time the time in milliseconds since the epoch.
+     * @return the broadcasts, sorted by start time.
+     */
+    public List<Airing> airingAt(long time){
+        ArrayList<Airing> airing = new ArrayList<>();
+        for (Airing candidate: buckets.getOrDefault(
+                Math.floorDiv(time, bucketSize), NO_AIRINGS)){
+            if (candidate.getStartTime() <= time &&
+                    candidate.getEndTime() > time){
+                airing.add(candidate);
+            }
+        }
+        return airing;
+    }
+
+    /**
+     * Returns everything starting within a number of milliseconds after a
+     * time on all channels.
+     *
+     * @param time the time in milliseconds since the epoch.
+     * @param duration the length of the window in milliseconds.
+     * @return the broadcasts, sorted by start time.
+     */
+    public List<Airing> startingWithin(long time, long duration){
+        ArrayList<Airing> starting = new ArrayList<>();
+        long end = time + duration;
+        for (long bucket = Math.floorDiv(time, bucketSize);
+             bucket <= Math.floorDiv(end, bucketSize); bucket++){
+            for (Airing candidate: buckets.getOrDefault(bucket, NO_AIRINGS)){
+                long start = candidate.getStartTime();
+                if (start > time && start <= end &&
+                        Math.floorDiv(start, bucketSize) == bucket){
+                    starting.add(candidate);
+                }
+            }
+        }
+        return starting;
+    }
+
+    /**
+     * Replaces the broadcasts of one channel in a bucket.
+     *
+     * @param bucket the bucket.
+     * @param channelId the id of the channel.
+     * @param airings the new broadcasts of the channel in the bucket, or
+     *                null if there are none.
+     */
+    private void replaceBucket(long bucket, int channelId,
+                               List<Airing> airings){
+        ArrayList<Airing> merged = new ArrayList<>();
+        for (Airing airing: buckets.getOrDefault(bucket, NO_AIRINGS)){
+            if (airing.channel.getId() != channelId){
+                merged.add(airing);
+            }
+        }
+        if (airings != null){
+            merged.addAll(airings);
+        }
+
+        if (merged.isEmpty()){
+            buckets.remove(bucket);
+        }
+        else {
+            Airing[] sorted = merged.toArray(NO_AIRINGS);
+            Arrays.sort(sorted, START_ORDER);
+            buckets.put(bucket, sorted);
+        }
+    }
+
+    /**
+     * Returns the first bucket a program is broadcast in.
+     *
+     * @param schedule the schedule of the program.
+     * @param index the position of the program in the schedule.
+     * @return the bucket.
+     */
+    private long firstBucket(Schedule schedule, int index){
+        return Math.floorDiv(schedule.getStartTime(index), bucketSize);
+    }
+
+    /**
+     * Returns the last bucket a program is broadcast in.
+     *
+     * @param schedule the schedule of the program.
+     * @param index the position of the program in the schedule.
+     * @return the bucket.
+     */
+    private long lastBucket(Schedule schedule, int index){
+        long end = Math.max(schedule.getStartTime(index),
+                schedule.getEndTime(index) - 1);
+        return Math.floorDiv(end, bucketSize);
+    }
+
+    /**
+     * A program broadcast on a channel. The broadcast refers to a position
+     * in the schedule of the channel, and the program is only created when
+     * it is asked for.
+     */
+    public static class Airing {
+
+        private final Channel channel;
+        private final Schedule schedule;
+        private final int index;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param channel the channel.
+         * @param schedule the schedule of the channel.
+         * @param index the position of the program in the schedule.
+         */
+        private Airing(Channel channel, Schedule schedule, int index){
+            this.channel = channel;
+            this.schedule = schedule;
+            this.index = index;
+        }
+
+        /**
+         * Returns the start time of the broadcast.
+         *
+         * @return the start time in milliseconds since the epoch.
+         */
+        public long getStartTime(){
+            return schedule.getStartTime(index);
+        }
+
+        /**
+         * Returns the end time of the broadcast.
+         *
+         * @return the end time in milliseconds since the epoch.
+         */
+        public long getEndTime(){
+            return schedule.getEndTime(index);
+        }
+
+        /**
+         * Returns the channel of the broadcast.
+         *
+         * @return the channel.
+         */
+        public Channel getChannel(){
+            return channel;
+        }
+
+        /**
+         * Returns the schedule the program of the broadcast is in.
+         *
+         * @return the schedule.
+         */
+        public Schedule getSchedule(){
+            return schedule;
+        }
+
+        /**
+         * Returns the position of the program in its schedule.
+         *
+         * @return the position.
+         */
+        public int getIndex(){
+            return index;
+        }
+
+        /**
+         * Returns the program of the broadcast. A new program is created on
+         * every call.
+         *
+         * @return the program.
+         */
+        public Program getProgram(){
+            return schedule.get(index);
+        }
+    }
+}
@@ -2,39 +2,55 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.time.Duration;
 import java.time.Instant;
+import java.time.Month;
+import java.time.chrono.IsoChronology;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 
 /**
  * A handler used by a SAX parser for creating a list of program objects, a
- * schedule for a channel.
+ * schedule for a channel. Strings that recur between episodes are shared
+ * through a StringPool, and the programs of a document that belong to the
+ * same series refer to one Series instead of keeping their own copy of the
+ * series information.
  * @author id15msd
  * @since 2018-01-07
  */
 public class ProgramHandler extends DefaultHandler {
 
+    private static final int NONE = 0;
+    private static final int EPISODE_ID = 1;
+    private static final int START_DATE = 2;
+    private static final int END_DATE = 3;
+    private static final int IMAGE_URL = 4;
+    private static final int DESCRIPTION = 5;
+    private static final int TITLE = 6;
+    private static final int SUBTITLE = 7;
+
+    private static final long SECONDS_PER_DAY = 24*60*60;
+
+    private static final StringPool STRINGS = new StringPool(8192);
+
     private ArrayList<Program> schedule = null;
     private Program program = null;
-    private StringBuilder data = null;
+    private final HashMap<Integer, Series> series = new HashMap<>();
+    private int seriesId;
+    private String seriesName;
+    private final StringBuilder data = new StringBuilder();
 
-    private boolean episodeID = false;
-    private boolean startDate = false;
-    private boolean endDate = false;
-    private boolean imageURL = false;
-    private boolean description = false;
-    private boolean title = false;
-    private boolean subtitle = false;
+    private int field = NONE;
+    private int elements = 0;
+    private boolean counting = false;
+    private ParseEvent event = null;
 
     /**
      * Returnes the list of programs.
      *
      * @return the list of programs(a schedule).
      */
-    public ArrayList getSchedule(){
+    public ArrayList<Program> getSchedule(){
         return schedule;
     }
 
@@ -45,39 +61,16 @@ public class ProgramHandler extends DefaultHandler {
      * @return the list of programs.
      */
     public ArrayList<Program> getShortSchedule(){
-        ArrayList<Program> shortSchedule = new ArrayList<>();
-
-        if (schedule != null) {
-            for (Program program : schedule) {
-                SimpleDateFormat sourceFormat = new SimpleDateFormat("yyyy-MM-dd" +
-                        " // HH:mm");
-
-                Date startTime = null;
-                Date endTime = null;
-                try {
-                    startTime = sourceFormat.parse(program.getStartDate());
-                    endTime = sourceFormat.parse(program.getEndDate());
-                } catch (ParseException e) {
-                    System.err.println("Time is in incorrect format");
-                }
-
-                Instant twelveHoursAgo =
-                        new Date().toInstant().minus(Duration.ofHours(12));
-                Instant twelveHoursLater =
-                        new Date().toInstant().plus(Duration.ofHours(12));
-
-                if (!startTime.toInstant().isAfter(twelveHoursLater) &&
-                        !endTime.toInstant().isBefore(twelveHoursAgo)) {
-                    shortSchedule.add(program);
-                }
-            }
+        if (schedule == null){
+            return new ArrayList<>();
         }
-
-        return shortSchedule;
+        return new Schedule(schedule).getShortSchedule();
     }
+
     /**
      * Receive notification of the start of an element. Creates a new Program
-     * with every new "scheduledepisode"-tag.
+     * with every new "scheduledepisode"-tag. Elements are matched with a
+     * switch on the tag name.
      *
      * @param uri The Namespace URI, or the empty string if the element has no
      *            Namespace URI or if Namespace processing is not being
@@ -95,44 +88,49 @@ public class ProgramHandler extends DefaultHandler {
     public void startElement(String uri, String localName, String qName,
                              Attributes attributes) throws SAXException {
 
-        if (qName.equalsIgnoreCase("scheduledepisode")){
-
-            program = new Program();
-
-            if (schedule == null){
-                schedule = new ArrayList<>();
-            }
-        }
-        else if (qName.equalsIgnoreCase("imageurl")){
-            imageURL = true;
-        }
-        else if (qName.equalsIgnoreCase("description")){
-            description = true;
-        }
-        else if (qName.equalsIgnoreCase("episodeid")){
-            episodeID = true;
-        }
-        else if (qName.equalsIgnoreCase("starttimeutc")){
-            startDate = true;
-        }
-        else if (qName.equalsIgnoreCase("endtimeutc")){
-            endDate = true;
+        if (counting){
+            elements++;
         }
-        else if (qName.equalsIgnoreCase("title")){
-            title = true;
-        }
-        else if (qName.equalsIgnoreCase("subtitle")){
-            subtitle = true;
-        }
-        else if (qName.equalsIgnoreCase("program")){
-            String id = attributes.getValue("id");
-            String name = attributes.getValue("name");
+        switch (qName){
+            case "scheduledepisode":
+                program = new Program();
+                seriesId = 0;
+                seriesName = null;
 
-            program.setId(Integer.parseInt(id));
-            program.setName(name);
+                if (schedule == null){
+                    schedule = new ArrayList<>();
+                }
+                break;
+            case "imageurl":
+                field = IMAGE_URL;
+                break;
+            case "description":
+                field = DESCRIPTION;
+                break;
+            case "episodeid":
+                field = EPISODE_ID;
+                break;
+            case "starttimeutc":
+                field = START_DATE;
+                break;
+            case "endtimeutc":
+                field = END_DATE;
+                break;
+            case "title":
+                field = TITLE;
+                break;
+            case "subtitle":
+                field = SUBTITLE;
+                break;
+            case "program":
+                seriesId = Integer.parseInt(attributes.getValue("id"));
+                seriesName = attributes.getValue("name");
+                break;
+            default:
+                break;
         }
 
-        data = new StringBuilder();
+        data.setLength(0);
 
     }
 
@@ -153,45 +151,44 @@ public class ProgramHandler extends DefaultHandler {
     @Override
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
-        String dataString = data.toString().trim();
-
-        if (imageURL){
-            program.setImageURL(dataString);
-            imageURL = false;
-        }
-        else if (description){
-            program.setDescription(dataString);
-            description = false;
-        }
-        else if (episodeID){
-            program.setEpisodeId(Integer.parseInt(dataString));
-            episodeID = false;
-        }
-        else if (title){
-            program.setTitle(dataString);
-            title = false;
-        }
-        else if (startDate){
-            program.setStartDateString(dataString);
-            startDate = false;
-        }
-        else if (endDate){
-            program.setEndDateString(dataString);
-            endDate = false;
-        }
-        else if (subtitle){
-            program.setSubtitle(dataString);
-            subtitle = false;
+        switch (field){
+            case IMAGE_URL:
+                program.setImageURL(pooled(data));
+                break;
+            case DESCRIPTION:
+                program.setDescription(pooled(data));
+                break;
+            case EPISODE_ID:
+                program.setEpisodeId(parseId(data));
+                break;
+            case TITLE:
+                program.setTitle(pooled(data));
+                break;
+            case START_DATE:
+                program.setStartTime(parseTime(data));
+                break;
+            case END_DATE:
+                program.setEndTime(parseTime(data));
+                break;
+            case SUBTITLE:
+                program.setSubtitle(pooled(data));
+                break;
+            default:
+                break;
         }
+        field = NONE;
 
-        if (qName.equalsIgnoreCase("scheduledepisode")){
+        if (qName.equals("scheduledepisode")){
+            if (seriesName != null){
+                program.setSeries(Series.of(series, seriesId, seriesName));
+            }
             schedule.add(program);
         }
     }
 
     /**
-     * Receive notification of character data inside an element. Creates a
-     * String of the character data.
+     * Receive notification of character data inside an element. Appends the
+     * character data to the buffer of the current element.
      *
      * @param ch The characters.
      * @param start The start position in the character array.
@@ -202,6 +199,199 @@ public class ProgramHandler extends DefaultHandler {
     @Override
     public void characters(char[] ch, int start, int length)
             throws SAXException {
-        data.append(new String(ch, start, length));
+        if (field != NONE){
+            data.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Receive notification of the beginning of the document. Clears the
+     * state of the handler so that it can be reused for another document,
+     * and starts timing the parse if the flight recorder records it.
+     * Elements are only counted if the parse is recorded or the Metrics
+     * are exposed.
+     *
+     * @throws SAXException Any SAX exception, possibly wrapping another
+     *                      exception.
+     */
+    @Override
+    public void startDocument() throws SAXException {
+        schedule = null;
+        program = null;
+        field = NONE;
+        elements = 0;
+        series.clear();
+        event = ParseEvent.isRecorded() ?
+                new ParseEvent("scheduledepisodes") : null;
+        counting = event != null || Metrics.isStarted();
+    }
+
+    /**
+     * Receive notification of the end of the document. Counts the parsed
+     * elements and episodes in the Metrics and the flight recorder event.
+     *
+     * @throws SAXException Any SAX exception, possibly wrapping another
+     *                      exception.
+     */
+    @Override
+    public void endDocument() throws SAXException {
+        int episodes = schedule != null ? schedule.size() : 0;
+        Metrics.elementsParsed(elements);
+        Metrics.episodesParsed(episodes);
+        if (event != null){
+            event.elements = elements;
+            event.items = episodes;
+            event.commit();
+            event = null;
+        }
+    }
+
+    /**
+     * Parses a UTC time in the format "yyyy-MM-ddTHH:mm:ssZ" directly from
+     * a buffer, without creating any objects. Times in other ISO-8601
+     * layouts, such as with fractions of a second, are parsed with
+     * Instant.parse().
+     *
+     * @param buffer the buffer holding the time.
+     * @return the time in milliseconds since the epoch.
+     * @throws SAXException if the time is in incorrect format.
+     */
+    private static long parseTime(StringBuilder buffer) throws SAXException {
+        int start = 0;
+        int end = buffer.length();
+        while (start < end && buffer.charAt(start) <= ' '){
+            start++;
+        }
+        while (end > start && buffer.charAt(end - 1) <= ' '){
+            end--;
+        }
+
+        if (end - start == 20 && buffer.charAt(start + 4) == '-' &&
+                buffer.charAt(start + 7) == '-' &&
+                buffer.charAt(start + 10) == 'T' &&
+                buffer.charAt(start + 13) == ':' &&
+                buffer.charAt(start + 16) == ':' &&
+                buffer.charAt(start + 19) == 'Z'){
+            int year = digits(buffer, start, 4);
+            int month = digits(buffer, start + 5, 2);
+            int day = digits(buffer, start + 8, 2);
+            int hour = digits(buffer, start + 11, 2);
+            int minute = digits(buffer, start + 14, 2);
+            int second = digits(buffer, start + 17, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 &&
+                    day <= Month.of(month).length(
+                            IsoChronology.INSTANCE.isLeapYear(year)) &&
+                    hour >= 0 && hour < 24 && minute >= 0 && minute < 60 &&
+                    second >= 0 && second < 60){
+                long seconds = epochDay(year, month, day)*SECONDS_PER_DAY +
+                        hour*3600 + minute*60 + second;
+                return seconds*1000;
+            }
+        }
+
+        String time = buffer.substring(start, end);
+        try {
+            return Instant.parse(time).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new SAXException("Time is in incorrect format: "+time, e);
+        }
+    }
+
+    /**
+     * Parses a number of decimal digits from a buffer.
+     *
+     * @param buffer the buffer.
+     * @param start the position of the first digit.
+     * @param length the number of digits.
+     * @return the number, or -1 if any of the characters is not a digit.
+     */
+    private static int digits(StringBuilder buffer, int start, int length){
+        int value = 0;
+        for (int i = start; i < start + length; i++){
+            char c = buffer.charAt(i);
+            if (c < '0' || c > '9'){
+                return -1;
+            }
+            value = value*10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to a date in the
+     * proleptic Gregorian calendar, the same as LocalDate.toEpochDay().
+     *
+     * @param year the year, not negative.
+     * @param month the month, from 1 to 12.
+     * @param day the day of the month.
+     * @return the epoch day.
+     */
+    private static long epochDay(int year, int month, int day){
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399)/400;
+        int yearOfEra = y - era*400;
+        int dayOfYear = (153*(month > 2 ? month - 3 : month + 9) + 2)/5 +
+                day - 1;
+        int dayOfEra = yearOfEra*365 + yearOfEra/4 - yearOfEra/100 +
+                dayOfYear;
+        return era*146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Parses an id from a buffer, ignoring leading and trailing whitespace,
+     * without creating a string.
+     *
+     * @param buffer the buffer.
+     * @return the id.
+     * @throws NumberFormatException if the buffer does not hold a number.
+     */
+    private static int parseId(StringBuilder buffer){
+        int start = 0;
+        int end = buffer.length();
+        while (start < end && buffer.charAt(start) <= ' '){
+            start++;
+        }
+        while (end > start && buffer.charAt(end - 1) <= ' '){
+            end--;
+        }
+        return Integer.parseInt(buffer, start, end, 10);
+    }
+
+    /**
+     * Returns the contents of a buffer without leading and trailing
+     * whitespace from the string pool.
+     *
+     * @param buffer the buffer.
+     * @return the trimmed contents.
+     */
+    private static String pooled(StringBuilder buffer){
+        int start = 0;
+        int end = buffer.length();
+        while (start < end && buffer.charAt(start) <= ' '){
+            start++;
+        }
+        while (end > start && buffer.charAt(end - 1) <= ' '){
+            end--;
+        }
+        return STRINGS.get(buffer, start, end);
+    }
+
+    /**
+     * Returns the contents of a buffer without leading and trailing
+     * whitespace, without creating an untrimmed copy first.
+     *
+     * @param buffer the buffer.
+     * @return the trimmed contents.
+     */
+    static String trim(StringBuilder buffer){
+        int start = 0;
+        int end = buffer.length();
+        while (start < end && buffer.charAt(start) <= ' '){
+            start++;
+        }
+        while (end > start && buffer.charAt(end - 1) <= ' '){
+            end--;
+        }
+        return buffer.substring(start, end);
     }
 }
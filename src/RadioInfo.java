@@ -1,13 +1,28 @@
+import java.io.IOException;
 import java.text.ParseException;
 
 /**
- * Main class of application. Only creates an instance of the Controller object.
+ * Main class of application. Creates an instance of the Controller object,
+ * or with the argument "--headless [port]" a HeadlessServer serving the
+ * channels as JSON without a GUI.
  * @author id15msd
  * @since 2018-01-07
  */
 public class RadioInfo {
 
-    public static void main(String[] args) throws InterruptedException, ParseException {
+    private static final int DEFAULT_PORT = 8080;
+
+    public static void main(String[] args) throws InterruptedException,
+            ParseException, IOException {
+
+        Metrics.start();
+
+        if (args.length > 0 && args[0].equals("--headless")){
+            int port = args.length > 1 ? Integer.parseInt(args[1]) :
+                    DEFAULT_PORT;
+            new HeadlessServer(port).start();
+            return;
+        }
 
        Controller controller =  new Controller();
     }
@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the refreshes of a ChannelUpdater one at a time, so that a refresh
+ * asked for while another is running joins the running one instead of
+ * sending all requests again. An incremental refresh always joins a
+ * running refresh. A full refresh joins a running full refresh, but
+ * supersedes a running incremental one: the days the incremental refresh
+ * has queued but not started are cancelled and the full refresh fetches
+ * everything. Days that are being fetched are never fetched twice, the
+ * ChannelUpdater waits for them before queuing the rest.
+ */
+public class RefreshCoordinator {
+
+    private final ChannelUpdater updater;
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "RefreshCoordinator");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private Refresh current;
+
+    /**
+     * Constructor of the class.
+     *
+     * @param updater the updater that refreshes the channels.
+     */
+    public RefreshCoordinator(ChannelUpdater updater){
+        this.updater = updater;
+    }
+
+    /**
+     * Asks for a refresh of the channels. Returns the running refresh if it
+     * does at least as much as asked for, otherwise starts a new refresh
+     * that runs when the running one has read its channel list.
+     *
+     * @param incremental true to only fetch expired data.
+     * @return the refresh that will do the asked for work.
+     */
+    public synchronized Refresh refresh(boolean incremental){
+        boolean supersedes = false;
+        if (current != null && !current.finished.isDone()){
+            if (incremental || !current.incremental){
+                Metrics.coalesced();
+                return current;
+            }
+            current.superseded = true;
+            supersedes = true;
+        }
+
+        Refresh refresh = new Refresh(incremental, supersedes);
+        current = refresh;
+        executor.execute(refresh::run);
+        return refresh;
+    }
+
+    /**
+     * A refresh of the channels, shared by everyone who asked for it while
+     * it was running.
+     */
+    public class Refresh {
+
+        private final boolean incremental;
+        private final boolean supersedes;
+        private final CompletableFuture<ArrayList<Channel>> channelList =
+                new CompletableFuture<>();
+        private final CompletableFuture<ArrayList<Channel>> finished =
+                new CompletableFuture<>();
+        private volatile boolean superseded = false;
+        private long cycle;
+        private Map<Channel, CompletableFuture<Void>> loads =
+                Collections.emptyMap();
+
+        /**
+         * Constructor of the class.
+         *
+         * @param incremental true to only fetch expired data.
+         * @param supersedes true to cancel the days queued by the refresh
+         *                   this one replaces.
+         */
+        private Refresh(boolean incremental, boolean supersedes){
+            this.incremental = incremental;
+            this.supersedes = supersedes;
+        }
+
+        /**
+         * Runs the refresh on the thread of the coordinator.
+         */
+        private void run(){
+            try {
+                if (supersedes){
+                    updater.cancelQueued();
+                }
+                ArrayList<Channel> channels = updater.update(incremental);
+                if (channels == null){
+                    channelList.complete(null);
+                    finished.complete(null);
+                    return;
+                }
+                cycle = updater.getCycle();
+                loads = updater.getLoads();
+                channelList.complete(channels);
+                updater.getRefresh().whenComplete((result, failure) ->
+                        finished.complete(channels));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                channelList.complete(null);
+                finished.complete(null);
+            }
+        }
+
+        /**
+         * Returns whether the refresh only fetches expired data.
+         *
+         * @return true if the refresh is incremental.
+         */
+        public boolean isIncremental(){
+            return incremental;
+        }
+
+        /**
+         * Returns whether a full refresh has replaced this one. The days
+         * this refresh had queued but not started are not fetched.
+         *
+         * @return true if the refresh has been superseded.
+         */
+        public boolean isSuperseded(){
+            return superseded;
+        }
+
+        /**
+         * Returns a future that completes with the channels when the
+         * channel list has been read, before their schedules are loaded.
+         *
+         * @return the future, completed with null if no channel list could
+         *         be read.
+         */
+        public CompletableFuture<ArrayList<Channel>> getChannelList(){
+            return channelList;
+        }
+
+        /**
+         * Returns a future that completes with the channels when all
+         * schedules of the refresh have been loaded and written to the
+         * snapshot.
+         *
+         * @return the future, completed with null if no channel list could
+         *         be read.
+         */
+        public CompletableFuture<ArrayList<Channel>> getFinished(){
+            return finished;
+        }
+
+        /**
+         * Returns the id of the refresh cycle. Only set once the channel
+         * list future has completed.
+         *
+         * @return the id of the cycle.
+         */
+        public long getCycle(){
+            return cycle;
+        }
+
+        /**
+         * Returns a future for every channel that completes when the
+         * channel's schedule has been loaded. Only set once the channel
+         * list future has completed.
+         *
+         * @return the futures by channel, in the order of the channel list.
+         */
+        public Map<Channel, CompletableFuture<Void>> getLoads(){
+            return loads;
+        }
+    }
+}
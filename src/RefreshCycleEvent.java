@@ -0,0 +1,42 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event spanning a refresh cycle, from asking for an
+ * update until all queued schedules have been loaded and written to the
+ * snapshot.
+ */
+@Name("radioinfo.RefreshCycle")
+@Label("Refresh Cycle")
+@Category({"RadioInfo", "Refresh"})
+@Description("An update of the channel list and the expired schedules")
+public class RefreshCycleEvent extends Event {
+
+    private static final EventType TYPE =
+            EventType.getEventType(RefreshCycleEvent.class);
+
+    @Label("Cycle")
+    long cycle;
+
+    @Label("Incremental")
+    boolean incremental;
+
+    @Label("Channels")
+    int channels;
+
+    @Label("Schedule Loads")
+    int loads;
+
+    /**
+     * Returns whether a running recording has the event enabled.
+     *
+     * @return true if the event is recorded.
+     */
+    static boolean isRecorded(){
+        return TYPE.isEnabled();
+    }
+}
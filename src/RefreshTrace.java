@@ -0,0 +1,67 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The refresh cycle and channel that the current thread is working on, so
+ * that the flight recorder events emitted while fetching and parsing can be
+ * tagged with them without passing them through every method. Every update
+ * of the channels starts a new cycle, work that is not part of an update,
+ * like a schedule loaded when a channel is selected, has cycle 0.
+ */
+public final class RefreshTrace {
+
+    private static final AtomicLong CYCLES = new AtomicLong();
+    private static final ThreadLocal<long[]> CONTEXT =
+            ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * Constructor of the class.
+     */
+    private RefreshTrace(){
+    }
+
+    /**
+     * Returns the id of a new refresh cycle.
+     *
+     * @return the id, starting at 1.
+     */
+    public static long nextCycle(){
+        return CYCLES.incrementAndGet();
+    }
+
+    /**
+     * Sets the cycle and channel of the current thread.
+     *
+     * @param cycle the id of the refresh cycle, or 0 if there is none.
+     * @param channelId the id of the channel, or 0 if there is none.
+     */
+    public static void enter(long cycle, int channelId){
+        long[] context = CONTEXT.get();
+        context[0] = cycle;
+        context[1] = channelId;
+    }
+
+    /**
+     * Clears the cycle and channel of the current thread.
+     */
+    public static void exit(){
+        enter(0, 0);
+    }
+
+    /**
+     * Returns the refresh cycle of the current thread.
+     *
+     * @return the id of the cycle, or 0 if there is none.
+     */
+    public static long cycle(){
+        return CONTEXT.get()[0];
+    }
+
+    /**
+     * Returns the channel of the current thread.
+     *
+     * @return the id of the channel, or 0 if there is none.
+     */
+    public static int channel(){
+        return (int) CONTEXT.get()[1];
+    }
+}
@@ -0,0 +1,549 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * An immutable schedule of programs sorted by start time. The programs are
+ * stored column by column in arrays, with the series of every program held
+ * by reference and the strings of all programs in a table shared with other
+ * schedules that the columns refer to by index, so that queries scan contiguous memory instead of program
+ * objects. Program objects are only created for the programs that are
+ * returned, and the columns can be read directly by index. As a list the
+ * schedule is a materializing view that creates a program on every get(),
+ * so code that scans a schedule reads the columns instead. Queries for the
+ * programs in a time window, the program playing at a time and the next
+ * program are answered with binary searches over the start times and the
+ * running maximum of the end times, so that programs that overlap each other
+ * are still found.
+ */
+public class Schedule extends AbstractList<Program> implements RandomAccess {
+
+    /**
+     * A schedule without programs.
+     */
+    public static final Schedule EMPTY = new Schedule(new StringTable(),
+            new Schedule[0], new int[0], new int[0], 0);
+
+    private static final long TWELVE_HOURS = 12*60*60*1000;
+
+    private final int size;
+    private final int[] episodeIds;
+    private final Series[] series;
+    private final long[] startTimes;
+    private final long[] endTimes;
+    private final long[] maxEndTimes;
+    private final int[] titles;
+    private final int[] subtitles;
+    private final int[] descriptions;
+    private final int[] imageURLs;
+    private final StringTable table;
+
+    /**
+     * Constructor of the class. Sorts the programs by start time.
+     *
+     * @param programs the programs of the schedule.
+     */
+    public Schedule(Collection<Program> programs){
+        Program[] sorted = programs.toArray(new Program[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(Program::getStartTime));
+
+        size = sorted.length;
+        episodeIds = new int[size];
+        series = new Series[size];
+        startTimes = new long[size];
+        endTimes = new long[size];
+        titles = new int[size];
+        subtitles = new int[size];
+        descriptions = new int[size];
+        imageURLs = new int[size];
+
+        table = StringTable.shared();
+        for (int i = 0; i < size; i++){
+            Program program = sorted[i];
+            episodeIds[i] = program.getEpisodeId();
+            series[i] = program.getSeries();
+            startTimes[i] = program.getStartTime();
+            endTimes[i] = program.getEndTime();
+            titles[i] = table.indexOf(program.getTitle());
+            subtitles[i] = table.indexOf(program.getSubtitle());
+            descriptions[i] = table.indexOf(program.getDescription());
+            imageURLs[i] = table.indexOf(program.getImageURL());
+        }
+        maxEndTimes = runningMaximum(endTimes);
+    }
+
+    /**
+     * Constructor of the class. Copies the given rows of the given
+     * schedules, in the given order, into one schedule. The strings of a
+     * row are only looked up again if its schedule uses another table.
+     *
+     * @param table the string table of the new schedule.
+     * @param schedules the schedules to copy from.
+     * @param sources the schedule of every row, as an index into schedules.
+     * @param rows the position of every row in its schedule.
+     * @param size the number of rows.
+     */
+    private Schedule(StringTable table, Schedule[] schedules, int[] sources,
+                     int[] rows, int size){
+        this.size = size;
+        episodeIds = new int[size];
+        series = new Series[size];
+        startTimes = new long[size];
+        endTimes = new long[size];
+        titles = new int[size];
+        subtitles = new int[size];
+        descriptions = new int[size];
+        imageURLs = new int[size];
+
+        this.table = table;
+        for (int i = 0; i < size; i++){
+            Schedule from = schedules[sources[i]];
+            int row = rows[i];
+            episodeIds[i] = from.episodeIds[row];
+            series[i] = from.series[row];
+            startTimes[i] = from.startTimes[row];
+            endTimes[i] = from.endTimes[row];
+            titles[i] = remap(from, from.titles[row]);
+            subtitles[i] = remap(from, from.subtitles[row]);
+            descriptions[i] = remap(from, from.descriptions[row]);
+            imageURLs[i] = remap(from, from.imageURLs[row]);
+        }
+        maxEndTimes = runningMaximum(endTimes);
+    }
+
+    /**
+     * Merges schedules into one schedule sorted by start time, without
+     * creating any program objects. A program that is in more than one of
+     * the schedules, such as a program running over midnight in the
+     * schedules of both days, is only kept once. Programs are the same if
+     * they start at the same time and have the same episode id, or have no
+     * episode id and the same title.
+     *
+     * @param schedules the schedules to merge.
+     * @return the merged schedule.
+     */
+    public static Schedule join(Collection<Schedule> schedules){
+        if (schedules.isEmpty()){
+            return EMPTY;
+        }
+        Schedule[] merged = schedules.toArray(new Schedule[0]);
+        int total = 0;
+        for (Schedule schedule: merged){
+            total += schedule.size;
+        }
+
+        int[] sources = new int[total];
+        int[] rows = new int[total];
+        int[] positions = new int[merged.length];
+        int size = 0;
+        int groupStart = 0;
+        for (int i = 0; i < total; i++){
+            int next = -1;
+            for (int s = 0; s < merged.length; s++){
+                if (positions[s] < merged[s].size && (next < 0 ||
+                        merged[s].startTimes[positions[s]] <
+                                merged[next].startTimes[positions[next]])){
+                    next = s;
+                }
+            }
+            int row = positions[next]++;
+
+            if (size > 0 && merged[sources[size - 1]].startTimes[
+                    rows[size - 1]] != merged[next].startTimes[row]){
+                groupStart = size;
+            }
+            boolean duplicate = false;
+            for (int j = groupStart; j < size && !duplicate; j++){
+                duplicate = isSameProgram(merged[sources[j]], rows[j],
+                        merged[next], row);
+            }
+            if (!duplicate){
+                sources[size] = next;
+                rows[size] = row;
+                size++;
+            }
+        }
+        return new Schedule(StringTable.shared(), merged, sources, rows,
+                size);
+    }
+
+    /**
+     * Returns the programs that start at or after one time and before
+     * another, as a schedule of its own.
+     *
+     * @param from the first start time in milliseconds since the epoch.
+     * @param to the end of the window in milliseconds since the epoch.
+     * @return the programs starting in the window.
+     */
+    public Schedule startingBetween(long from, long to){
+        int start = lowerBound(startTimes, from);
+        int end = Math.max(start, lowerBound(startTimes, to));
+        int[] rows = new int[end - start];
+        for (int i = 0; i < rows.length; i++){
+            rows[i] = start + i;
+        }
+        return new Schedule(table, new Schedule[]{this},
+                new int[rows.length], rows, rows.length);
+    }
+
+    /**
+     * Returns the schedule with its strings in a string table, copying the
+     * schedule if it uses another table.
+     *
+     * @param table the string table.
+     * @return this schedule, or a copy using the table.
+     */
+    Schedule inTable(StringTable table){
+        if (table == this.table){
+            return this;
+        }
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++){
+            rows[i] = i;
+        }
+        return new Schedule(table, new Schedule[]{this}, new int[size], rows,
+                size);
+    }
+
+    /**
+     * Returns whether two programs of two schedules, starting at the same
+     * time, are the same broadcast.
+     *
+     * @param first the schedule of the first program.
+     * @param firstRow the position of the first program.
+     * @param second the schedule of the second program.
+     * @param secondRow the position of the second program.
+     * @return true if the programs have the same episode id, or have no
+     *         episode id and the same title.
+     */
+    private static boolean isSameProgram(Schedule first, int firstRow,
+                                         Schedule second, int secondRow){
+        int episode = first.episodeIds[firstRow];
+        if (episode != second.episodeIds[secondRow]){
+            return false;
+        }
+        return episode != 0 || Objects.equals(
+                first.string(first.titles[firstRow]),
+                second.string(second.titles[secondRow]));
+    }
+
+    /**
+     * Returns the program at a position in start time order. The schedule
+     * is only a materializing view of its columns: a new program is created
+     * on every call, so code that scans the schedule should read the columns
+     * with getTitle(int), getStartTime(int) and the other accessors instead.
+     *
+     * @param index the position.
+     * @return the program.
+     */
+    @Override
+    public Program get(int index) {
+        if (index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+
+                    size);
+        }
+        Program program = new Program();
+        program.setEpisodeId(episodeIds[index]);
+        program.setStartTime(startTimes[index]);
+        program.setEndTime(endTimes[index]);
+        program.setTitle(string(titles[index]));
+        program.setSubtitle(string(subtitles[index]));
+        program.setDescription(string(descriptions[index]));
+        program.setImageURL(string(imageURLs[index]));
+        program.setSeries(series[index]);
+        return program;
+    }
+
+    /**
+     * Returns the number of programs in the schedule.
+     *
+     * @return the number of programs.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the episode id of the program at a position.
+     *
+     * @param index the position.
+     * @return the episode id.
+     */
+    public int getEpisodeId(int index){
+        return episodeIds[index];
+    }
+
+    /**
+     * Returns the series id of the program at a position.
+     *
+     * @param index the position.
+     * @return the series id, or 0 if the program has no series.
+     */
+    public int getSeriesId(int index){
+        return series[index] != null ? series[index].getId() : 0;
+    }
+
+    /**
+     * Returns the start time of the program at a position.
+     *
+     * @param index the position.
+     * @return the start time in milliseconds since the epoch.
+     */
+    public long getStartTime(int index){
+        return startTimes[index];
+    }
+
+    /**
+     * Returns the end time of the program at a position.
+     *
+     * @param index the position.
+     * @return the end time in milliseconds since the epoch.
+     */
+    public long getEndTime(int index){
+        return endTimes[index];
+    }
+
+    /**
+     * Returns the title of the program at a position.
+     *
+     * @param index the position.
+     * @return the title.
+     */
+    public String getTitle(int index){
+        return string(titles[index]);
+    }
+
+    /**
+     * Returns the subtitle of the program at a position.
+     *
+     * @param index the position.
+     * @return the subtitle, or null.
+     */
+    public String getSubtitle(int index){
+        return string(subtitles[index]);
+    }
+
+    /**
+     * Returns the series name of the program at a position.
+     *
+     * @param index the position.
+     * @return the name, or null if the program has no series.
+     */
+    public String getName(int index){
+        return series[index] != null ? series[index].getName() : null;
+    }
+
+    /**
+     * Returns the description of the program at a position.
+     *
+     * @param index the position.
+     * @return the description, or null.
+     */
+    public String getDescription(int index){
+        return string(descriptions[index]);
+    }
+
+    /**
+     * Returns the image URL of the program at a position.
+     *
+     * @param index the position.
+     * @return the URL, or null.
+     */
+    public String getImageURL(int index){
+        return string(imageURLs[index]);
+    }
+
+    /**
+     * Returns the programs broadcasting at some time between two times,
+     * sorted by start time.
+     *
+     * @param from the start of the window in milliseconds since the epoch.
+     * @param to the end of the window in milliseconds since the epoch.
+     * @return the programs overlapping the window.
+     */
+    public ArrayList<Program> between(long from, long to){
+        int[] rows = rowsBetween(from, to);
+        ArrayList<Program> overlapping = new ArrayList<>(rows.length);
+        for (int row: rows){
+            overlapping.add(get(row));
+        }
+        return overlapping;
+    }
+
+    /**
+     * Returns the positions of the programs broadcasting at some time
+     * between two times, without creating any programs.
+     *
+     * @param from the start of the window in milliseconds since the epoch.
+     * @param to the end of the window in milliseconds since the epoch.
+     * @return the positions in ascending order.
+     */
+    public int[] rowsBetween(long from, long to){
+        int start = lowerBound(maxEndTimes, from);
+        int end = Math.max(start, upperBound(startTimes, to));
+        int[] rows = new int[end - start];
+        int count = 0;
+        for (int i = start; i < end; i++){
+            if (endTimes[i] >= from){
+                rows[count++] = i;
+            }
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Returns the programs broadcasting twelve hours before and after the
+     * method is called.
+     *
+     * @return the programs, sorted by start time.
+     */
+    public ArrayList<Program> getShortSchedule(){
+        long now = System.currentTimeMillis();
+        return between(now - TWELVE_HOURS, now + TWELVE_HOURS);
+    }
+
+    /**
+     * Returns the positions of the programs broadcasting twelve hours before
+     * and after the method is called.
+     *
+     * @return the positions in ascending order.
+     */
+    public int[] getShortScheduleRows(){
+        long now = System.currentTimeMillis();
+        return rowsBetween(now - TWELVE_HOURS, now + TWELVE_HOURS);
+    }
+
+    /**
+     * Returns the program broadcasting at a time. If several programs
+     * overlap the time, the one that started last is returned.
+     *
+     * @param time the time in milliseconds since the epoch.
+     * @return the program, or null if nothing is broadcasting.
+     */
+    public Program nowPlaying(long time){
+        for (int i = upperBound(startTimes, time) - 1;
+             i >= 0 && maxEndTimes[i] > time; i--){
+            if (endTimes[i] > time){
+                return get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first program starting after a time.
+     *
+     * @param time the time in milliseconds since the epoch.
+     * @return the program, or null if no program starts after the time.
+     */
+    public Program nextUp(long time){
+        int index = upperBound(startTimes, time);
+        return index < size ? get(index) : null;
+    }
+
+    /**
+     * Returns the programs starting within a number of milliseconds after a
+     * time.
+     *
+     * @param time the time in milliseconds since the epoch.
+     * @param duration the length of the window in milliseconds.
+     * @return the programs, sorted by start time.
+     */
+    public List<Program> startingWithin(long time, long duration){
+        return subList(upperBound(startTimes, time),
+                upperBound(startTimes, time + duration));
+    }
+
+    /**
+     * Returns a string of the string table.
+     *
+     * @param index the index of the string.
+     * @return the string, or null for StringTable.NO_STRING.
+     */
+    private String string(int index){
+        return table.get(index);
+    }
+
+    /**
+     * Returns the index a string of another schedule has in the string
+     * table of this schedule.
+     *
+     * @param from the schedule the string belongs to.
+     * @param index the index in the string table of that schedule.
+     * @return the index in the string table of this schedule.
+     */
+    private int remap(Schedule from, int index){
+        if (from.table == table){
+            return index;
+        }
+        return table.indexOf(from.table.get(index));
+    }
+
+    /**
+     * Returns the running maximum of some values.
+     *
+     * @param values the values.
+     * @return the largest value up to and including every position.
+     */
+    private static long[] runningMaximum(long[] values){
+        long[] maximum = new long[values.length];
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < values.length; i++){
+            max = Math.max(max, values[i]);
+            maximum[i] = max;
+        }
+        return maximum;
+    }
+
+    /**
+     * Returns the index of the first value that is greater than or equal to
+     * a key in a sorted array.
+     *
+     * @param values the sorted values.
+     * @param key the key.
+     * @return the index, or the length of the array if there is none.
+     */
+    private static int lowerBound(long[] values, long key){
+        int low = 0;
+        int high = values.length;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key){
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first value that is greater than a key in a
+     * sorted array.
+     *
+     * @param values the sorted values.
+     * @param key the key.
+     * @return the index, or the length of the array if there is none.
+     */
+    private static int upperBound(long[] values, long key){
+        int low = 0;
+        int high = values.length;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= key){
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,341 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A disk backed cache of schedule responses from Sveriges Radios open API.
+ * Entries are keyed by channel id and date and hold the validators (ETag and
+ * Last-Modified) of the response together with the response body, so that
+ * later requests can be sent as conditional requests. The parsed schedule of
+ * an entry is kept in memory and reused as long as the server answers that
+ * the response is not modified. Entries for dates outside the days the
+ * channels show are evicted from memory and disk by retainDates().
+ */
+public class ScheduleCache {
+
+    private static final long MAX_AGE = 7L*24*60*60*1000;
+
+    private final File directory;
+    private final ConcurrentHashMap<String, Entry> entries =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Constructor of the class. Uses the directory given by the system
+     * property "radioinfo.cache", or ".radioinfo/cache" in the home
+     * directory of the user.
+     */
+    public ScheduleCache(){
+        this(new File(System.getProperty("radioinfo.cache",
+                System.getProperty("user.home")+File.separator+".radioinfo"+
+                        File.separator+"cache")));
+    }
+
+    /**
+     * Constructor of the class. Creates the cache directory if needed and
+     * removes entries that have not been used for a week.
+     *
+     * @param directory the directory to store responses in.
+     */
+    public ScheduleCache(File directory){
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            System.err.println("Could not create cache directory "+directory);
+        }
+        removeOldEntries();
+    }
+
+    /**
+     * Returns the cached entry for a schedule, reading its validators from
+     * disk if it is not in memory.
+     *
+     * @param id the id of the channel.
+     * @param date the date of the schedule.
+     * @return the entry, or null if the schedule is not cached.
+     */
+    public Entry get(int id, String date){
+        String key = key(id, date);
+        Entry entry = entries.get(key);
+        if (entry != null){
+            return entry;
+        }
+
+        File validators = validators(key);
+        if (!validators.isFile() || !body(key).isFile()){
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(validators)){
+            properties.load(input);
+        } catch (IOException e) {
+            return null;
+        }
+        entry = new Entry(key, properties.getProperty("etag"),
+                properties.getProperty("lastModified"), null);
+        Entry previous = entries.putIfAbsent(key, entry);
+
+        return previous != null ? previous : entry;
+    }
+
+    /**
+     * Creates an empty file in the cache directory to write a response body
+     * to while it is being parsed, so that it can be moved into place with
+     * put() once the whole body has been read.
+     *
+     * @return the file, or null if it could not be created.
+     */
+    public File newBodyFile(){
+        try {
+            return File.createTempFile("body", ".tmp", directory);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a response and its parsed schedule. The response body, written
+     * to a file created by newBodyFile(), is moved into place if the
+     * response carries a validator, since it can not be revalidated
+     * otherwise, and deleted if it does not. The validators are written to
+     * a temporary file and the old ones deleted before the body is moved,
+     * so that a crash never leaves a new body with old validators, only an
+     * entry without validators that is fetched again.
+     *
+     * @param id the id of the channel.
+     * @param date the date of the schedule.
+     * @param etag the ETag of the response, or null.
+     * @param lastModified the Last-Modified date of the response, or null.
+     * @param body the file holding the response body, or null to only keep
+     *             the schedule in memory.
+     * @param schedule the schedule parsed from the body.
+     */
+    public void put(int id, String date, String etag, String lastModified,
+                    File body, Schedule schedule){
+        String key = key(id, date);
+        if (etag == null && lastModified == null){
+            entries.remove(key);
+            if (body != null && !body.delete()){
+                System.err.println("Could not delete "+body);
+            }
+            return;
+        }
+        entries.put(key, new Entry(key, etag, lastModified, schedule));
+        if (body == null){
+            return;
+        }
+
+        Properties properties = new Properties();
+        if (etag != null){
+            properties.setProperty("etag", etag);
+        }
+        if (lastModified != null){
+            properties.setProperty("lastModified", lastModified);
+        }
+        File validators = validators(key);
+        try {
+            File temporary = File.createTempFile("validators", ".tmp",
+                    directory);
+            try (OutputStream output = new FileOutputStream(temporary)){
+                properties.store(output, null);
+            }
+            Files.deleteIfExists(validators.toPath());
+            Files.move(body.toPath(), body(key).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(temporary.toPath(), validators.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Evicts the entries of dates outside a window of days from memory and
+     * disk, so that the cache does not keep the days that have passed.
+     * An entry for a range of days is evicted if any of its days is
+     * outside the window. Files that have not been modified within the
+     * maximum age, such as bodies left by an interrupted request, are
+     * deleted as well. The parsed schedules of the kept entries are copied
+     * into the current generation of the shared string table.
+     *
+     * @param firstDate the first date to keep, in the format "yyyy/mm/dd".
+     * @param lastDate the last date to keep, in the format "yyyy/mm/dd".
+     */
+    public void retainDates(String firstDate, String lastDate){
+        String first = firstDate.replace('/', '-');
+        String last = lastDate.replace('/', '-');
+        entries.keySet().removeIf(key -> !isWithin(key, first, last));
+        StringTable table = StringTable.shared();
+        for (Entry entry: entries.values()){
+            Schedule schedule = entry.getSchedule();
+            if (schedule != null){
+                entry.setSchedule(schedule.inTable(table));
+            }
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null){
+            for (File file: files){
+                String name = file.getName();
+                int extension = name.lastIndexOf('.');
+                if (name.indexOf('_') < 0 || extension < 0 ||
+                        name.endsWith(".tmp")){
+                    continue;
+                }
+                if (!isWithin(name.substring(0, extension), first, last) &&
+                        !file.delete()){
+                    System.err.println("Could not delete "+file);
+                }
+            }
+        }
+        removeOldEntries();
+    }
+
+    /**
+     * Returns whether the days of a key are within a window of days.
+     *
+     * @param key the key, the channel id and the date or the first and
+     *            last date, with the dates in the format "yyyy-mm-dd".
+     * @param first the first date of the window.
+     * @param last the last date of the window.
+     * @return true if all days of the key are within the window.
+     */
+    private static boolean isWithin(String key, String first, String last){
+        String dates = key.substring(key.indexOf('_') + 1);
+        if (dates.length() < 10){
+            return false;
+        }
+        return dates.substring(0, 10).compareTo(first) >= 0 &&
+                dates.substring(dates.length() - 10).compareTo(last) <= 0;
+    }
+
+    /**
+     * Returns the file holding the validators of an entry.
+     *
+     * @param key the key of the entry.
+     * @return the file.
+     */
+    private File validators(String key){
+        return new File(directory, key+".properties");
+    }
+
+    /**
+     * Returns the file holding the response body of an entry.
+     *
+     * @param key the key of the entry.
+     * @return the file.
+     */
+    private File body(String key){
+        return new File(directory, key+".xml");
+    }
+
+    /**
+     * Returns the key of a schedule.
+     *
+     * @param id the id of the channel.
+     * @param date the date of the schedule.
+     * @return the key.
+     */
+    private static String key(int id, String date){
+        return id+"_"+date.replace('/', '-');
+    }
+
+    /**
+     * Deletes cached files that have not been modified within the maximum
+     * age.
+     */
+    private void removeOldEntries(){
+        File[] files = directory.listFiles();
+        if (files == null){
+            return;
+        }
+        long limit = System.currentTimeMillis() - MAX_AGE;
+        for (File file: files){
+            if (file.lastModified() < limit && !file.delete()){
+                System.err.println("Could not delete "+file);
+            }
+        }
+    }
+
+    /**
+     * A cached schedule response.
+     */
+    public class Entry {
+
+        private final String key;
+        private final String etag;
+        private final String lastModified;
+        private volatile Schedule schedule;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param key the key of the entry.
+         * @param etag the ETag of the response, or null.
+         * @param lastModified the Last-Modified date of the response, or null.
+         * @param schedule the parsed schedule, or null if not parsed yet.
+         */
+        private Entry(String key, String etag, String lastModified,
+                      Schedule schedule){
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.schedule = schedule;
+        }
+
+        /**
+         * Returns the ETag of the response.
+         *
+         * @return the ETag, or null.
+         */
+        public String getETag(){
+            return etag;
+        }
+
+        /**
+         * Returns the Last-Modified date of the response.
+         *
+         * @return the date, or null.
+         */
+        public String getLastModified(){
+            return lastModified;
+        }
+
+        /**
+         * Returns the parsed schedule of the entry.
+         *
+         * @return the schedule, or null if the entry was read from disk and
+         *         has not been parsed yet.
+         */
+        public Schedule getSchedule(){
+            return schedule;
+        }
+
+        /**
+         * Sets the parsed schedule of an entry read from disk.
+         *
+         * @param schedule the schedule.
+         */
+        public void setSchedule(Schedule schedule){
+            this.schedule = schedule;
+        }
+
+        /**
+         * Opens the cached response body.
+         *
+         * @return the body as a stream.
+         * @throws IOException if the body could not be read.
+         */
+        public InputStream openBody() throws IOException {
+            return new FileInputStream(body(key));
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Loads channel schedules in the background. The days of a channel's
+ * schedule are loaded with one ranged request, queued in a priority queue so
+ * that a schedule the user asks for can be moved ahead of the schedules that
+ * are only prefetched.
+ */
+public class ScheduleLoader {
+
+    private final XMLParserSAX parser;
+    private final Consumer<Channel> listener;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<Channel, Load> loads =
+            new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Constructor of the class.
+     *
+     * @param parser the parser used to fetch schedules.
+     * @param listener called with every channel whose schedule has been
+     *                 loaded and rebuilt.
+     */
+    public ScheduleLoader(XMLParserSAX parser, Consumer<Channel> listener){
+        this.parser = parser;
+        this.listener = listener;
+        AtomicInteger threads = new AtomicInteger();
+        executor = new ThreadPoolExecutor(parser.getParallelism(),
+                parser.getParallelism(), 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "ScheduleLoader-"+threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    /**
+     * Queues the given days of a channel's schedule for loading, as one
+     * request for the range from the first to the last date. The channel's
+     * schedule is rebuilt when the days are loaded. Nothing is queued if the
+     * channel is already loading.
+     *
+     * @param channel the channel to load.
+     * @param dates the consecutive dates to load, in the format "yyyy/mm/dd"
+     *              and in date order.
+     * @param fresh the dates of the range that had not expired, which keep
+     *              the time they were last updated.
+     * @param urgent true to load the days before all prefetched days.
+     * @return a future that completes when the channel is loaded.
+     */
+    public CompletableFuture<Void> load(Channel channel, List<String> dates,
+                                        Set<String> fresh, boolean urgent){
+        if (dates.isEmpty()){
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Load load = new Load(channel, dates, fresh, urgent);
+        Load previous = loads.putIfAbsent(channel, load);
+        if (previous != null){
+            return urgent ? prioritize(channel) : previous.future;
+        }
+
+        executor.execute(load.request);
+
+        return load.future;
+    }
+
+    /**
+     * Moves the queued request of a channel ahead of all prefetched
+     * channels.
+     *
+     * @param channel the channel.
+     * @return a future that completes when the channel is loaded.
+     */
+    public CompletableFuture<Void> prioritize(Channel channel){
+        Load load = loads.get(channel);
+        if (load == null){
+            return CompletableFuture.completedFuture(null);
+        }
+
+        RangeRequest request = load.request;
+        if (!request.urgent && executor.remove(request)){
+            request.urgent = true;
+            executor.execute(request);
+        }
+
+        return load.future;
+    }
+
+    /**
+     * Removes the prefetch requests that are queued but have not started.
+     * The days of the removed requests keep their previous schedules, and
+     * their loads complete.
+     */
+    public void cancelQueued(){
+        for (Runnable queued: executor.getQueue().toArray(new Runnable[0])){
+            RangeRequest request = (RangeRequest) queued;
+            if (!request.urgent && executor.remove(request)){
+                Metrics.cancelled();
+                request.load.done();
+            }
+        }
+    }
+
+    /**
+     * Returns a future that completes when the days of a channel that are
+     * queued or loading have been loaded, without moving them ahead.
+     *
+     * @param channel the channel.
+     * @return the future, completed if the channel is not loading.
+     */
+    public CompletableFuture<Void> whenLoaded(Channel channel){
+        Load load = loads.get(channel);
+        return load != null ? load.future :
+                CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Returns whether a channel has days queued or loading.
+     *
+     * @param channel the channel.
+     * @return true if the channel is loading.
+     */
+    public boolean isLoading(Channel channel){
+        return loads.containsKey(channel);
+    }
+
+    /**
+     * The pending days of one channel, tagged with the refresh cycle that
+     * queued them. The days are loaded within one refresh budget, and keep
+     * their previous schedules if it runs out before they are loaded.
+     */
+    private class Load {
+
+        private final Channel channel;
+        private final long cycle = RefreshTrace.cycle();
+        private final long deadline = parser.getPolicy().newDeadline();
+        private final RangeRequest request;
+        private final CompletableFuture<Void> future =
+                new CompletableFuture<>();
+
+        /**
+         * Constructor of the class.
+         *
+         * @param channel the channel to load.
+         * @param dates the consecutive dates to load.
+         * @param fresh the dates that keep the time they were last updated.
+         * @param urgent true if the load is urgent.
+         */
+        private Load(Channel channel, List<String> dates, Set<String> fresh,
+                     boolean urgent){
+            this.channel = channel;
+            this.request = new RangeRequest(this, dates, fresh, urgent);
+        }
+
+        /**
+         * Called when the days have been loaded or cancelled. Rebuilds the
+         * schedule of the channel, notifies the listener and completes the
+         * future.
+         */
+        private void done(){
+            ModelEvent event = ModelEvent.isRecorded() ?
+                    new ModelEvent("rebuild") : null;
+            channel.rebuildSchedule();
+            if (event != null){
+                event.programs = channel.getLoadedSchedule().size();
+                event.commit();
+                event = new ModelEvent("index");
+            }
+            listener.accept(channel);
+            if (event != null){
+                event.commit();
+            }
+            loads.remove(channel, this);
+            future.complete(null);
+        }
+    }
+
+    /**
+     * A request for a range of days of a schedule. Urgent requests are run
+     * before prefetch requests, otherwise requests are run in the order they
+     * were queued.
+     */
+    private class RangeRequest implements Runnable,
+            Comparable<RangeRequest> {
+
+        private final Load load;
+        private final List<String> dates;
+        private final Set<String> fresh;
+        private final long order = sequence.getAndIncrement();
+        private volatile boolean urgent;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param load the load the request belongs to.
+         * @param dates the consecutive dates to load, in the format
+         *              "yyyy/mm/dd" and in date order.
+         * @param fresh the dates that keep the time they were last updated.
+         * @param urgent true if the request is urgent.
+         */
+        private RangeRequest(Load load, List<String> dates,
+                             Set<String> fresh, boolean urgent){
+            this.load = load;
+            this.dates = dates;
+            this.fresh = fresh;
+            this.urgent = urgent;
+        }
+
+        /**
+         * Fetches the days and stores them in the channel. Days that could
+         * not be fetched keep their previous schedules. The refresh cycle
+         * and the channel are set as the trace of the thread while it runs.
+         */
+        @Override
+        public void run() {
+            RefreshTrace.enter(load.cycle, load.channel.getId());
+            try {
+                Schedule schedule = parser.getSchedule(
+                        load.channel.getId(), dates.get(0),
+                        dates.get(dates.size() - 1), load.deadline);
+                if (schedule != null){
+                    load.channel.setDaySchedules(dates, schedule, fresh);
+                }
+            } finally {
+                load.done();
+                RefreshTrace.exit();
+            }
+        }
+
+        /**
+         * Compares the order in which two requests should be run.
+         *
+         * @param other the other request.
+         * @return a negative number if this request should be run first.
+         */
+        @Override
+        public int compareTo(RangeRequest other) {
+            if (urgent != other.urgent){
+                return urgent ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+}
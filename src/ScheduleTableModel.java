@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The model of the schedule table, backed by the rows of a channel's
+ * Schedule. The table asks only for the cells it paints, so a program is
+ * never created and its times are only formatted when its row is shown.
+ * Refreshing the schedule of the same channel keeps the rows that are
+ * still there, together with the selection of the table.
+ */
+public class ScheduleTableModel extends
+        KeyedTableModel<ScheduleTableModel.Row> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMNS = {"Program", "Start", "Slut"};
+
+    private int channelId = -1;
+
+    /**
+     * Shows some of the programs of a channel's schedule. If the schedule is
+     * of the channel already shown, only the programs that were added,
+     * removed or changed are repainted.
+     *
+     * @param channel the channel.
+     * @param schedule the schedule of the channel.
+     * @param positions the positions of the programs to show in the
+     *                  schedule, in ascending order.
+     */
+    public void setSchedule(Channel channel, Schedule schedule,
+                            int[] positions){
+        ArrayList<Row> rows = new ArrayList<>(positions.length);
+        for (int position: positions){
+            rows.add(new Row(schedule, position));
+        }
+        if (channel.getId() == channelId){
+            updateRows(rows);
+        }
+        else {
+            channelId = channel.getId();
+            replaceRows(rows);
+        }
+    }
+
+    /**
+     * Removes all programs, for example while a schedule is loading.
+     */
+    public void clear(){
+        channelId = -1;
+        replaceRows(new ArrayList<>());
+    }
+
+    /**
+     * Returns the program shown in a row. A new program is created on every
+     * call.
+     *
+     * @param row the index of the row in the model.
+     * @return the program.
+     */
+    public Program getProgram(int row){
+        Row shown = getRow(row);
+        return shown.schedule.get(shown.position);
+    }
+
+    /**
+     * Returns whether the program shown in a row has ended.
+     *
+     * @param row the index of the row in the model.
+     * @param time the time in milliseconds since the epoch.
+     * @return true if the program ended at or before the time.
+     */
+    public boolean hasEnded(int row, long time){
+        Row shown = getRow(row);
+        return shown.schedule.getEndTime(shown.position) <= time;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns.
+     */
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    /**
+     * Returns the name of a column.
+     *
+     * @param column the index of the column.
+     * @return the name.
+     */
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    /**
+     * Returns the value of a cell: the title, start or end of a program.
+     *
+     * @param row the index of the row.
+     * @param column the index of the column.
+     * @return the value.
+     */
+    @Override
+    public Object getValueAt(int row, int column) {
+        Row shown = getRow(row);
+        switch (column){
+            case 0:
+                return shown.schedule.getTitle(shown.position);
+            case 1:
+                return shown.getStartDate();
+            default:
+                return shown.getEndDate();
+        }
+    }
+
+    /**
+     * Returns the key identifying a row.
+     *
+     * @param row the row.
+     * @return the start time and episode id of the program.
+     */
+    @Override
+    protected Object key(Row row) {
+        return List.of(row.schedule.getStartTime(row.position),
+                row.schedule.getEpisodeId(row.position));
+    }
+
+    /**
+     * Returns whether a program is shown differently.
+     *
+     * @param previous the row shown so far.
+     * @param updated the row replacing it.
+     * @return true if the title or end time has changed.
+     */
+    @Override
+    protected boolean changed(Row previous, Row updated) {
+        return previous.schedule.getEndTime(previous.position) !=
+                updated.schedule.getEndTime(updated.position) ||
+                !Objects.equals(previous.schedule.getTitle(previous.position),
+                        updated.schedule.getTitle(updated.position));
+    }
+
+    /**
+     * A row of the table, a position in a schedule. The times are formatted
+     * the first time they are shown.
+     */
+    static class Row {
+
+        private final Schedule schedule;
+        private final int position;
+        private String startDate;
+        private String endDate;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param schedule the schedule.
+         * @param position the position of the program in the schedule.
+         */
+        private Row(Schedule schedule, int position){
+            this.schedule = schedule;
+            this.position = position;
+        }
+
+        /**
+         * Returns the formatted start time of the program.
+         *
+         * @return the start time.
+         */
+        private String getStartDate(){
+            if (startDate == null){
+                startDate = Program.formatTime(schedule.getStartTime(position));
+            }
+            return startDate;
+        }
+
+        /**
+         * Returns the formatted end time of the program.
+         *
+         * @return the end time.
+         */
+        private String getEndDate(){
+            if (endDate == null){
+                endDate = Program.formatTime(schedule.getEndTime(position));
+            }
+            return endDate;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An inverted index over the titles, subtitles, series names and
+ * descriptions of the programs of all channels. Every word of a query
+ * matches the words of a program that start with it, and a program has to
+ * match all words of the query. Matches in the title count the most and
+ * matches in the description the least, and whole words count more than
+ * prefixes. The index is updated one day of one channel at a time, and
+ * only the days whose schedules have changed since the last update are
+ * indexed again.
+ *
+ * Words are split on everything but letters and digits and are compared
+ * in lower case. Accents are removed from letters except &aring;, &auml;
+ * and &ouml;, which are letters of their own in Swedish, and the most
+ * common Swedish and English words are not indexed.
+ */
+public class SearchIndex {
+
+    private static final Locale SWEDISH = new Locale("sv", "SE");
+    private static final HashSet<String> STOP_WORDS = new HashSet<>(
+            Arrays.asList("och", "i", "att", "det", "som", "en", "p\u00e5",
+                    "\u00e4r", "av", "f\u00f6r", "med", "till", "den", "har",
+                    "de", "inte", "om", "ett", "men", "var", "jag", "s\u00e5",
+                    "vi", "kan", "man", "the", "of", "and", "a", "in", "to"));
+
+    private static final int DESCRIPTION = 0;
+    private static final int SUBTITLE = 1;
+    private static final int SERIES = 2;
+    private static final int TITLE = 3;
+    private static final int[] FIELD_WEIGHTS = {1, 3, 5, 8};
+    private static final int FIELD_BITS = 2;
+
+    private final TreeMap<String, HashMap<Day, int[]>> words = new TreeMap<>();
+    private final HashMap<Integer, HashMap<String, Day>> channels =
+            new HashMap<>();
+
+    /**
+     * Indexes the days of a channel whose schedules have changed since the
+     * last update, and removes the days the channel no longer has.
+     *
+     * @param channel the channel.
+     */
+    public synchronized void update(Channel channel){
+        HashMap<String, Day> indexed = channels.computeIfAbsent(
+                channel.getId(), id -> new HashMap<>());
+        Map<String, Schedule> days = channel.getDays();
+
+        Iterator<Map.Entry<String, Day>> iterator =
+                indexed.entrySet().iterator();
+        while (iterator.hasNext()){
+            Map.Entry<String, Day> entry = iterator.next();
+            Day day = entry.getValue();
+            if (day.channel != channel ||
+                    days.get(entry.getKey()) != day.schedule){
+                remove(day);
+                iterator.remove();
+            }
+        }
+
+        for (Map.Entry<String, Schedule> entry: days.entrySet()){
+            if (!indexed.containsKey(entry.getKey())){
+                indexed.put(entry.getKey(),
+                        add(new Day(channel, entry.getValue())));
+            }
+        }
+    }
+
+    /**
+     * Removes all channels but the given ones from the index.
+     *
+     * @param kept the channels to keep.
+     */
+    public synchronized void retainChannels(Collection<Channel> kept){
+        HashSet<Integer> ids = new HashSet<>();
+        for (Channel channel: kept){
+            ids.add(channel.getId());
+        }
+
+        Iterator<Map.Entry<Integer, HashMap<String, Day>>> iterator =
+                channels.entrySet().iterator();
+        while (iterator.hasNext()){
+            Map.Entry<Integer, HashMap<String, Day>> entry = iterator.next();
+            if (!ids.contains(entry.getKey())){
+                for (Day day: entry.getValue().values()){
+                    remove(day);
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Searches for programs matching all words of a query. The results are
+     * sorted by how well they match, then programs that have not ended
+     * before programs that have, and then by start time. The last word of
+     * the query is used even if it is a common word, since it may be the
+     * start of a word that is still being typed, but a common last word
+     * that matches nothing else is ignored.
+     *
+     * @param query the query.
+     * @param limit the largest number of results.
+     * @return the results.
+     */
+    public List<Hit> search(String query, int limit){
+        List<String> queryWords = split(query, true);
+        if (queryWords.isEmpty() || limit <= 0){
+            return new ArrayList<>();
+        }
+        String last = queryWords.remove(queryWords.size() - 1);
+        queryWords.removeAll(STOP_WORDS);
+
+        HashMap<Day, HashMap<Integer, Integer>> scores = null;
+        synchronized (this){
+            for (String queryWord: queryWords){
+                HashMap<Day, HashMap<Integer, Integer>> wordScores =
+                        score(queryWord);
+                scores = scores == null ? wordScores :
+                        intersect(scores, wordScores);
+                if (scores.isEmpty()){
+                    return new ArrayList<>();
+                }
+            }
+
+            HashMap<Day, HashMap<Integer, Integer>> lastScores = score(last);
+            if (scores == null){
+                scores = lastScores;
+            }
+            else {
+                HashMap<Day, HashMap<Integer, Integer>> both =
+                        intersect(scores, lastScores);
+                if (!both.isEmpty() || !STOP_WORDS.contains(last)){
+                    scores = both;
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        ArrayList<Hit> hits = new ArrayList<>();
+        for (Map.Entry<Day, HashMap<Integer, Integer>> day: scores.entrySet()){
+            for (Map.Entry<Integer, Integer> row: day.getValue().entrySet()){
+                hits.add(new Hit(day.getKey(), row.getKey(), row.getValue()));
+            }
+        }
+        hits.sort((a, b) -> {
+            if (a.score != b.score){
+                return Integer.compare(b.score, a.score);
+            }
+            boolean aEnded = a.getEndTime() <= now;
+            boolean bEnded = b.getEndTime() <= now;
+            if (aEnded != bEnded){
+                return aEnded ? 1 : -1;
+            }
+            return Long.compare(a.getStartTime(), b.getStartTime());
+        });
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) :
+                hits;
+    }
+
+    /**
+     * Splits a text into the words that are indexed.
+     *
+     * @param text the text, may be null.
+     * @return the words, in the order they appear.
+     */
+    public static List<String> tokenize(String text){
+        return split(text, false);
+    }
+
+    /**
+     * Splits a text into lower case words without accents.
+     *
+     * @param text the text, may be null.
+     * @param commonWords true to keep the most common words.
+     * @return the words, in the order they appear.
+     */
+    private static List<String> split(String text, boolean commonWords){
+        ArrayList<String> tokens = new ArrayList<>();
+        if (text == null){
+            return tokens;
+        }
+
+        String lower = text.toLowerCase(SWEDISH);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= lower.length(); i++){
+            char c = i < lower.length() ? lower.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)){
+                word.append(fold(c));
+            }
+            else if (word.length() > 0){
+                String token = word.toString();
+                if (commonWords || !STOP_WORDS.contains(token)){
+                    tokens.add(token);
+                }
+                word.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Removes the accent of a letter, unless it is &aring;, &auml; or &ouml;.
+     *
+     * @param c the letter in lower case.
+     * @return the letter without accent.
+     */
+    private static char fold(char c){
+        if (c < 0x80 || c == '\u00e5' || c == '\u00e4' || c == '\u00f6'){
+            return c;
+        }
+        if (c == '\u00e6'){
+            return '\u00e4';
+        }
+        if (c == '\u00f8'){
+            return '\u00f6';
+        }
+        String decomposed = Normalizer.normalize(String.valueOf(c),
+                Normalizer.Form.NFD);
+        return decomposed.charAt(0);
+    }
+
+    /**
+     * Scores the programs with a word starting with a query word. A whole
+     * word scores twice as much as a prefix.
+     *
+     * @param queryWord the query word.
+     * @return the scores by day and position in the day's schedule.
+     */
+    private HashMap<Day, HashMap<Integer, Integer>> score(String queryWord){
+        HashMap<Day, HashMap<Integer, Integer>> scores = new HashMap<>();
+        for (Map.Entry<String, HashMap<Day, int[]>> word:
+                words.subMap(queryWord, queryWord+Character.MAX_VALUE)
+                        .entrySet()){
+            int factor = word.getKey().length() == queryWord.length() ? 2 : 1;
+            for (Map.Entry<Day, int[]> postings: word.getValue().entrySet()){
+                HashMap<Integer, Integer> dayScores = scores.computeIfAbsent(
+                        postings.getKey(), day -> new HashMap<>());
+                for (int posting: postings.getValue()){
+                    int score = factor*FIELD_WEIGHTS[posting &
+                            ((1 << FIELD_BITS) - 1)];
+                    dayScores.merge(posting >>> FIELD_BITS, score, Math::max);
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Keeps the programs that have scores for both of two query words and
+     * adds up their scores.
+     *
+     * @param scores the scores so far.
+     * @param wordScores the scores of the next query word.
+     * @return the scores of the programs in both.
+     */
+    private static HashMap<Day, HashMap<Integer, Integer>> intersect(
+            HashMap<Day, HashMap<Integer, Integer>> scores,
+            HashMap<Day, HashMap<Integer, Integer>> wordScores){
+        HashMap<Day, HashMap<Integer, Integer>> both = new HashMap<>();
+        for (Map.Entry<Day, HashMap<Integer, Integer>> day: scores.entrySet()){
+            HashMap<Integer, Integer> other = wordScores.get(day.getKey());
+            if (other == null){
+                continue;
+            }
+            HashMap<Integer, Integer> dayScores = new HashMap<>();
+            for (Map.Entry<Integer, Integer> row: day.getValue().entrySet()){
+                Integer score = other.get(row.getKey());
+                if (score != null){
+                    dayScores.put(row.getKey(), row.getValue() + score);
+                }
+            }
+            if (!dayScores.isEmpty()){
+                both.put(day.getKey(), dayScores);
+            }
+        }
+        return both;
+    }
+
+    /**
+     * Adds the words of all programs of a day to the index.
+     *
+     * @param day the day.
+     * @return the day.
+     */
+    private Day add(Day day){
+        HashMap<String, int[]> postings = new HashMap<>();
+        HashMap<String, Integer> counts = new HashMap<>();
+        Schedule schedule = day.schedule;
+        for (int row = 0; row < schedule.size(); row++){
+            HashMap<String, Integer> fields = new HashMap<>();
+            addWords(fields, schedule.getDescription(row), DESCRIPTION);
+            addWords(fields, schedule.getSubtitle(row), SUBTITLE);
+            addWords(fields, schedule.getName(row), SERIES);
+            addWords(fields, schedule.getTitle(row), TITLE);
+            for (Map.Entry<String, Integer> field: fields.entrySet()){
+                int count = counts.merge(field.getKey(), 1, Integer::sum);
+                int[] rows = postings.get(field.getKey());
+                if (rows == null || rows.length < count){
+                    rows = rows == null ? new int[1] :
+                            Arrays.copyOf(rows, rows.length*2);
+                    postings.put(field.getKey(), rows);
+                }
+                rows[count - 1] = row << FIELD_BITS | field.getValue();
+            }
+        }
+
+        for (Map.Entry<String, int[]> posting: postings.entrySet()){
+            int count = counts.get(posting.getKey());
+            words.computeIfAbsent(posting.getKey(), word -> new HashMap<>())
+                    .put(day, Arrays.copyOf(posting.getValue(), count));
+        }
+        day.words = postings.keySet().toArray(new String[0]);
+        return day;
+    }
+
+    /**
+     * Records the best field every word of a text appears in.
+     *
+     * @param fields the best field of every word so far.
+     * @param text the text, may be null.
+     * @param field the field of the text.
+     */
+    private static void addWords(HashMap<String, Integer> fields, String text,
+                                 int field){
+        for (String word: tokenize(text)){
+            fields.merge(word, field, Math::max);
+        }
+    }
+
+    /**
+     * Removes the words of a day from the index.
+     *
+     * @param day the day.
+     */
+    private void remove(Day day){
+        for (String word: day.words){
+            HashMap<Day, int[]> postings = words.get(word);
+            if (postings != null){
+                postings.remove(day);
+                if (postings.isEmpty()){
+                    words.remove(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * The indexed schedule of one day of a channel.
+     */
+    private static class Day {
+
+        private final Channel channel;
+        private final Schedule schedule;
+        private String[] words;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param channel the channel.
+         * @param schedule the schedule of the day.
+         */
+        private Day(Channel channel, Schedule schedule){
+            this.channel = channel;
+            this.schedule = schedule;
+        }
+    }
+
+    /**
+     * A program matching a query.
+     */
+    public static class Hit {
+
+        private final Day day;
+        private final int position;
+        private final int score;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param day the day of the program.
+         * @param position the position of the program in the day.
+         * @param score how well the program matches.
+         */
+        private Hit(Day day, int position, int score){
+            this.day = day;
+            this.position = position;
+            this.score = score;
+        }
+
+        /**
+         * Returns the channel of the program.
+         *
+         * @return the channel.
+         */
+        public Channel getChannel(){
+            return day.channel;
+        }
+
+        /**
+         * Returns the program. A new program is created on every call.
+         *
+         * @return the program.
+         */
+        public Program getProgram(){
+            return day.schedule.get(position);
+        }
+
+        /**
+         * Returns the schedule of the day of the program.
+         *
+         * @return the schedule.
+         */
+        public Schedule getSchedule(){
+            return day.schedule;
+        }
+
+        /**
+         * Returns the position of the program in the schedule of its day.
+         *
+         * @return the position.
+         */
+        public int getPosition(){
+            return position;
+        }
+
+        /**
+         * Returns the title of the program.
+         *
+         * @return the title.
+         */
+        public String getTitle(){
+            return day.schedule.getTitle(position);
+        }
+
+        /**
+         * Returns the start time of the program.
+         *
+         * @return the start time in milliseconds since the epoch.
+         */
+        public long getStartTime(){
+            return day.schedule.getStartTime(position);
+        }
+
+        /**
+         * Returns the end time of the program.
+         *
+         * @return the end time in milliseconds since the epoch.
+         */
+        public long getEndTime(){
+            return day.schedule.getEndTime(position);
+        }
+
+        /**
+         * Returns how well the program matches the query.
+         *
+         * @return the score, higher is better.
+         */
+        public int getScore(){
+            return score;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The model of the table of search results. The results are replaced as a
+ * whole by every search.
+ */
+public class SearchTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMNS = {"Program", "Kanal", "Start"};
+
+    private List<SearchIndex.Hit> hits = new ArrayList<>();
+
+    /**
+     * Shows the results of a search.
+     *
+     * @param hits the results, best first.
+     */
+    public void setHits(List<SearchIndex.Hit> hits){
+        this.hits = hits;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Returns the program of a result. A new program is created on every
+     * call.
+     *
+     * @param row the index of the row in the model.
+     * @return the program.
+     */
+    public Program getProgram(int row){
+        return hits.get(row).getProgram();
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of results.
+     */
+    @Override
+    public int getRowCount() {
+        return hits.size();
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns.
+     */
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    /**
+     * Returns the name of a column.
+     *
+     * @param column the index of the column.
+     * @return the name.
+     */
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    /**
+     * Returns the value of a cell: the title of the program, the name of
+     * its channel or its start time.
+     *
+     * @param row the index of the row.
+     * @param column the index of the column.
+     * @return the value.
+     */
+    @Override
+    public Object getValueAt(int row, int column) {
+        SearchIndex.Hit hit = hits.get(row);
+        switch (column){
+            case 0:
+                return hit.getTitle();
+            case 1:
+                return hit.getChannel().getName();
+            default:
+                return Program.formatTime(hit.getStartTime());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Map;
+
+/**
+ * A program series from Sveriges Radios open API, the "program" that an
+ * episode belongs to. The same series airs many times in a schedule, so the
+ * episodes read from one document share one series object and refer to it.
+ * Episodes keep their own image URL and description, since they differ
+ * between episodes of the same series.
+ */
+public final class Series {
+
+    private final int id;
+    private final String name;
+
+    /**
+     * Constructor of the class.
+     *
+     * @param id the id of the series.
+     * @param name the name of the series.
+     */
+    public Series(int id, String name){
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Returns the series with an id among the series read so far, adding a
+     * new series if the id is new or the series has been renamed. Episodes
+     * read before a rename keep the series they were read with.
+     *
+     * @param known the series read so far, by id.
+     * @param id the id of the series.
+     * @param name the name of the series.
+     * @return the series.
+     */
+    public static Series of(Map<Integer, Series> known, int id, String name){
+        Series series = known.get(id);
+        if (series == null || !series.name.equals(name)){
+            series = new Series(id, name);
+            known.put(id, series);
+        }
+        return series;
+    }
+
+    /**
+     * Returns the id of the series.
+     *
+     * @return the id of the series.
+     */
+    public int getId(){
+        return id;
+    }
+
+    /**
+     * Returns the name of the series.
+     *
+     * @return the name of the series.
+     */
+    public String getName(){
+        return name;
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary snapshot of all channels and their schedules, written
+ * after every refresh and read on startup so that the channels can be shown
+ * before anything has been fetched. The file starts with a magic number, a
+ * format version and the time it was written, followed by a table of all
+ * distinct strings and the channels with their day schedules. Strings are
+ * stored once and referred to by their index in the table, times are stored
+ * as milliseconds since the epoch and all lists are prefixed with their
+ * length. The file is read through a memory mapping.
+ */
+public class Snapshot {
+
+    private static final int MAGIC = 0x52495353;
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    /**
+     * Constructor of the class. Uses the file given by the system property
+     * "radioinfo.snapshot", or ".radioinfo/snapshot.bin" in the home
+     * directory of the user.
+     */
+    public Snapshot(){
+        this(new File(System.getProperty("radioinfo.snapshot",
+                System.getProperty("user.home")+File.separator+".radioinfo"+
+                        File.separator+"snapshot.bin")));
+    }
+
+    /**
+     * Constructor of the class.
+     *
+     * @param file the file of the snapshot.
+     */
+    public Snapshot(File file){
+        this.file = file;
+    }
+
+    /**
+     * Writes the channels and their day schedules to the snapshot. The
+     * snapshot is first written to a temporary file which then replaces the
+     * previous snapshot, so that a snapshot is never half written.
+     *
+     * @param channels the channels.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public synchronized void write(List<Channel> channels)
+            throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(records);
+
+        output.writeInt(channels.size());
+        for (Channel channel: channels){
+            output.writeInt(channel.getId());
+            output.writeInt(strings.indexOf(channel.getName()));
+            output.writeInt(strings.indexOf(channel.getImageURL()));
+            output.writeInt(strings.indexOf(channel.getDescription()));
+            output.writeInt(strings.indexOf(channel.getSiteURL()));
+            output.writeInt(strings.indexOf(channel.getType()));
+            output.writeInt(strings.indexOf(channel.getScheduleURL()));
+
+            Map<String, Schedule> days = channel.getDays();
+            output.writeInt(days.size());
+            for (Map.Entry<String, Schedule> day: days.entrySet()){
+                output.writeInt(strings.indexOf(day.getKey()));
+                output.writeLong(channel.getDayUpdated(day.getKey()));
+                Schedule schedule = day.getValue();
+                output.writeInt(schedule.size());
+                for (int i = 0; i < schedule.size(); i++){
+                    output.writeInt(schedule.getSeriesId(i));
+                    output.writeInt(schedule.getEpisodeId(i));
+                    output.writeLong(schedule.getStartTime(i));
+                    output.writeLong(schedule.getEndTime(i));
+                    output.writeInt(strings.indexOf(schedule.getName(i)));
+                    output.writeInt(strings.indexOf(schedule.getTitle(i)));
+                    output.writeInt(strings.indexOf(
+                            schedule.getSubtitle(i)));
+                    output.writeInt(strings.indexOf(
+                            schedule.getDescription(i)));
+                    output.writeInt(strings.indexOf(
+                            schedule.getImageURL(i)));
+                }
+            }
+        }
+        output.flush();
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Could not create directory "+directory);
+        }
+        File temporary = new File(directory, file.getName()+".tmp");
+        try (DataOutputStream snapshot = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)))){
+            snapshot.writeInt(MAGIC);
+            snapshot.writeInt(VERSION);
+            snapshot.writeLong(System.currentTimeMillis());
+            strings.write(snapshot);
+            records.writeTo(snapshot);
+        }
+        Files.move(temporary.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the channels of the snapshot. Every channel is marked as stale
+     * until it has been refreshed, and its days keep the time they were
+     * fetched so that only expired days are fetched again.
+     *
+     * @return the channels, or null if there is no readable snapshot of the
+     *         current version.
+     */
+    public ArrayList<Channel> read(){
+        if (!file.isFile()){
+            return null;
+        }
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)){
+            MappedByteBuffer buffer = fileChannel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                return null;
+            }
+            buffer.getLong();
+
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++){
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            HashMap<Integer, Series> series = new HashMap<>();
+            int channelCount = buffer.getInt();
+            ArrayList<Channel> channels = new ArrayList<>(channelCount);
+            for (int c = 0; c < channelCount; c++){
+                Channel channel = new Channel();
+                channel.setId(buffer.getInt());
+                channel.setName(string(strings, buffer.getInt()));
+                channel.setImageURL(string(strings, buffer.getInt()));
+                channel.setDescription(string(strings, buffer.getInt()));
+                channel.setSiteURL(string(strings, buffer.getInt()));
+                channel.setType(string(strings, buffer.getInt()));
+                channel.setScheduleURL(string(strings, buffer.getInt()));
+
+                int dayCount = buffer.getInt();
+                for (int d = 0; d < dayCount; d++){
+                    String date = string(strings, buffer.getInt());
+                    long updated = buffer.getLong();
+                    int programCount = buffer.getInt();
+                    ArrayList<Program> daySchedule =
+                            new ArrayList<>(programCount);
+                    for (int p = 0; p < programCount; p++){
+                        Program program = new Program();
+                        int seriesId = buffer.getInt();
+                        program.setEpisodeId(buffer.getInt());
+                        program.setStartTime(buffer.getLong());
+                        program.setEndTime(buffer.getLong());
+                        String seriesName = string(strings, buffer.getInt());
+                        program.setTitle(string(strings, buffer.getInt()));
+                        program.setSubtitle(string(strings, buffer.getInt()));
+                        program.setDescription(string(strings,
+                                buffer.getInt()));
+                        program.setImageURL(string(strings, buffer.getInt()));
+                        if (seriesName != null){
+                            program.setSeries(Series.of(series, seriesId,
+                                    seriesName));
+                        }
+                        daySchedule.add(program);
+                    }
+                    channel.setDaySchedule(date, new Schedule(daySchedule),
+                            updated);
+                }
+                channel.rebuildSchedule();
+                channel.setStale(true);
+                channels.add(channel);
+            }
+            return channels;
+        } catch (IOException | BufferUnderflowException |
+                IndexOutOfBoundsException | NegativeArraySizeException |
+                IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Returns a string of the string table.
+     *
+     * @param strings the string table.
+     * @param index the index of the string, or -1 for null.
+     * @return the string.
+     */
+    private static String string(String[] strings, int index){
+        return index < 0 ? null : strings[index];
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * A fixed size table of strings used to deduplicate the titles, subtitles,
+ * descriptions and image URLs that recur in every schedule. A string is
+ * looked up by the characters in a buffer, so a string that is already in
+ * the table is returned without being created again. Every slot holds the
+ * last string stored in it, which keeps the table from growing while the
+ * strings that recur stay in it. The table can be shared between threads,
+ * a lost update only costs a duplicate string.
+ */
+public class StringPool {
+
+    private final String[] strings;
+    private final int mask;
+
+    /**
+     * Constructor of the class.
+     *
+     * @param size the number of slots, rounded up to a power of two.
+     */
+    public StringPool(int size){
+        int slots = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        strings = new String[slots];
+        mask = slots - 1;
+    }
+
+    /**
+     * Returns a string with the characters of a part of a buffer, from the
+     * table if it is there.
+     *
+     * @param buffer the buffer.
+     * @param start the index of the first character.
+     * @param end the index after the last character.
+     * @return the string.
+     */
+    public String get(CharSequence buffer, int start, int end){
+        int hash = 0;
+        for (int i = start; i < end; i++){
+            hash = 31*hash + buffer.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        String string = strings[slot];
+        if (string != null && string.hashCode() == hash &&
+                contentEquals(string, buffer, start, end)){
+            return string;
+        }
+        string = buffer.subSequence(start, end).toString();
+        strings[slot] = string;
+        return string;
+    }
+
+    /**
+     * Returns whether a string has the same characters as a part of a
+     * buffer.
+     *
+     * @param string the string.
+     * @param buffer the buffer.
+     * @param start the index of the first character.
+     * @param end the index after the last character.
+     * @return true if the characters are the same.
+     */
+    private static boolean contentEquals(String string, CharSequence buffer,
+                                         int start, int end){
+        if (string.length() != end - start){
+            return false;
+        }
+        for (int i = start; i < end; i++){
+            if (string.charAt(i - start) != buffer.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A table of distinct strings, numbered in the order they are added, so that
+ * a string can be stored as an index. Schedules store their strings as
+ * indices into the table returned by shared(), so joining and splitting
+ * schedules copies indices instead of strings. Tables only grow, so the
+ * shared table is replaced by a new generation on every refresh, and once
+ * it has reached its limit. The schedules that are kept are then copied
+ * into the new generation, and an old table is freed when no schedule
+ * refers to it any more. Strings are added under a lock but can be read
+ * from any thread without one.
+ */
+class StringTable {
+
+    /**
+     * The index that stands for null.
+     */
+    static final int NO_STRING = -1;
+
+    private static final int SHARED_LIMIT = 1 << 18;
+
+    private static StringTable shared = new StringTable();
+
+    private final HashMap<String, Integer> indices = new HashMap<>();
+    private volatile String[] strings = new String[64];
+    private int size = 0;
+
+    /**
+     * Returns the table shared by all schedules, starting a new one if the
+     * current table is full.
+     *
+     * @return the shared table.
+     */
+    static synchronized StringTable shared(){
+        if (shared.size() >= SHARED_LIMIT){
+            shared = new StringTable();
+        }
+        return shared;
+    }
+
+    /**
+     * Starts a new generation of the shared table, unless the current one
+     * is still empty. Schedules created after this use the new table.
+     *
+     * @return the new shared table.
+     */
+    static synchronized StringTable nextGeneration(){
+        if (shared.size() > 0){
+            shared = new StringTable();
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the index of a string, adding it to the table if needed.
+     *
+     * @param string the string, may be null.
+     * @return the index, or NO_STRING for null.
+     */
+    synchronized int indexOf(String string){
+        if (string == null){
+            return NO_STRING;
+        }
+        Integer index = indices.get(string);
+        if (index != null){
+            return index;
+        }
+        String[] table = strings;
+        if (size == table.length){
+            table = Arrays.copyOf(table, size*2);
+        }
+        table[size] = string;
+        strings = table;
+        indices.put(string, size);
+        return size++;
+    }
+
+    /**
+     * Returns a string of the table.
+     *
+     * @param index the index of the string, or NO_STRING.
+     * @return the string, or null for NO_STRING.
+     */
+    String get(int index){
+        return index == NO_STRING ? null : strings[index];
+    }
+
+    /**
+     * Returns the number of strings in the table.
+     *
+     * @return the number of strings.
+     */
+    synchronized int size(){
+        return size;
+    }
+
+    /**
+     * Writes the table as its length followed by every string as its UTF-8
+     * length and bytes.
+     *
+     * @param output the output to write to.
+     * @throws IOException if the table could not be written.
+     */
+    synchronized void write(DataOutputStream output) throws IOException {
+        output.writeInt(size);
+        for (int i = 0; i < size; i++){
+            byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for showing refreshed channels on the event
+ * dispatch thread.
+ */
+@Name("radioinfo.UiUpdate")
+@Label("UI Update")
+@Category({"RadioInfo", "Refresh"})
+@Description("Updating the tables with refreshed channels")
+public class UiUpdateEvent extends Event {
+
+    private static final EventType TYPE =
+            EventType.getEventType(UiUpdateEvent.class);
+
+    @Label("Cycle")
+    long cycle;
+
+    @Label("Channels")
+    int channels;
+
+    @Label("Step")
+    String step;
+
+    /**
+     * Returns whether a running recording has the event enabled.
+     *
+     * @return true if the event is recorded.
+     */
+    static boolean isRecorded(){
+        return TYPE.isEnabled();
+    }
+}
@@ -12,6 +12,7 @@ public class UpdateDialog {
 
     private JTextArea textArea;
     private int time = 0;
+    private boolean progressShown = false;
     /**
      * Constructor of class. Creates and shows the dialog window.
      */
@@ -41,9 +42,26 @@ public class UpdateDialog {
     }
 
     /**
-     * Adds dot to show time has passed. Used as loading indicator.
+     * Shows how many channels have been loaded so far. Once the progress is
+     * shown the dialog stops adding dots.
+     *
+     * @param completed the number of loaded channels.
+     * @param total the number of channels.
+     */
+    public void showProgress(int completed, int total){
+        progressShown = true;
+        textArea.setText("Kanaltablåerna uppdateras. Vänligen vänta.\n" +
+                completed+" av "+total+" kanaler klara.");
+    }
+
+    /**
+     * Adds dot to show time has passed. Used as loading indicator until the
+     * progress of the update is known.
      */
     public void indicateTimeHasPassed(){
+        if (progressShown){
+            return;
+        }
         time++;
         if(time<20){
             textArea.append(".");
@@ -3,139 +3,428 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
- * Reads xml files from Sveriges Radios open API for radio broadcasts.
+ * Reads xml files from Sveriges Radios open API for radio broadcasts. All
+ * requests of a parser share one HTTP client, which multiplexes them over
+ * HTTP/2 connections where the server supports it and asks for compressed
+ * responses. Response bodies are parsed while they are being received,
+ * without being buffered.
  * @author id15msd
  * @since 2018-01-07
  */
 public class XMLParserSAX {
 
+    private static final int DEFAULT_PARALLELISM = 8;
+
+    private static final SAXParserFactory SAX_PARSER_FACTORY =
+            SAXParserFactory.newInstance();
+    private static final ThreadLocal<SAXParser> SAX_PARSERS =
+            new ThreadLocal<>();
+    private static final ThreadLocal<ProgramHandler> PROGRAM_HANDLERS =
+            ThreadLocal.withInitial(ProgramHandler::new);
+
+    private static final String DEFAULT_BASE_URL = "https://api.sr.se/api/v2";
+    private static final TimeZone API_TIME_ZONE =
+            TimeZone.getTimeZone("Europe/Stockholm");
+    private static final int NOT_MODIFIED = 304;
+    private static final int BAD_REQUEST = 400;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int INTERNAL_ERROR = 500;
+
+    private static final ExecutorService HEDGES =
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "XMLParserSAX-hedge");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final ScheduledExecutorService WATCHDOG =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "XMLParserSAX-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final int parallelism;
+    private final String baseURL;
+    private final FetchPolicy policy;
+    private final HttpClient client;
+    private final ScheduleCache cache = new ScheduleCache();
+    private final ConcurrentHashMap<String, CompletableFuture<Schedule>>
+            inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor of the class. Uses the number of concurrent requests given
+     * by the system property "radioinfo.parallelism" and the API given by
+     * the system property "radioinfo.api", or the defaults.
+     */
+    public XMLParserSAX(){
+        this(Integer.getInteger("radioinfo.parallelism", DEFAULT_PARALLELISM));
+    }
+
     /**
-     * Creates a SAXParserFactory which reads a XML file over radio channels,
-     * returns the channels as a list of channels.
+     * Constructor of the class. Uses the API given by the system property
+     * "radioinfo.api", or Sveriges Radios API.
      *
-     * @return A list of channels.
+     * @param parallelism the maximum number of concurrent schedule requests.
      */
-    public ArrayList<Channel> getChannels(){
-        ArrayList<Channel> channels;
+    public XMLParserSAX(int parallelism){
+        this(parallelism, System.getProperty("radioinfo.api",
+                DEFAULT_BASE_URL));
+    }
 
-        SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-        try{
-            SAXParser saxParser = saxParserFactory.newSAXParser();
-            ChannelHandler handler = new ChannelHandler();
-            InputStream input = new URL("https://api.sr" +
-                    ".se/api/v2/channels?pagination=false").openStream();
-            saxParser.parse(input, handler);
+    /**
+     * Constructor of the class.
+     *
+     * @param parallelism the maximum number of concurrent schedule requests.
+     * @param baseURL the URL of the API, for example
+     *                "https://api.sr.se/api/v2".
+     */
+    public XMLParserSAX(int parallelism, String baseURL){
+        this(parallelism, baseURL, new FetchPolicy());
+    }
 
-            channels = handler.getChannelList();
-            for (Channel channel: channels){
-                channel.setSchedule(getSchedule(channel.getId()));
-            }
+    /**
+     * Constructor of the class.
+     *
+     * @param parallelism the maximum number of concurrent schedule requests.
+     * @param baseURL the URL of the API, for example
+     *                "https://api.sr.se/api/v2".
+     * @param policy the timeouts, retries and hedging of the requests.
+     */
+    public XMLParserSAX(int parallelism, String baseURL, FetchPolicy policy){
+        if (parallelism < 1){
+            throw new IllegalArgumentException("parallelism must be at " +
+                    "least 1, was "+parallelism);
+        }
+        this.parallelism = parallelism;
+        this.baseURL = baseURL.endsWith("/") ?
+                baseURL.substring(0, baseURL.length() - 1) : baseURL;
+        this.policy = policy;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(policy.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
 
-        }catch (ParserConfigurationException | SAXException | IOException | NullPointerException e) {
-            e.printStackTrace();
+    /**
+     * Returns the timeouts, retries and hedging of the requests.
+     *
+     * @return the fetch policy.
+     */
+    public FetchPolicy getPolicy(){
+        return policy;
+    }
+
+    /**
+     * Returns the HTTP client of the requests, which may be shared with
+     * other requests to the same servers.
+     *
+     * @return the HTTP client.
+     */
+    public HttpClient getClient(){
+        return client;
+    }
+
+    /**
+     * Evicts the cached schedule responses of dates outside a window of
+     * days.
+     *
+     * @param firstDate the first date to keep, in the format "yyyy/mm/dd".
+     * @param lastDate the last date to keep, in the format "yyyy/mm/dd".
+     */
+    public void retainCachedDates(String firstDate, String lastDate){
+        cache.retainDates(firstDate, lastDate);
+    }
+
+    /**
+     * Returns the maximum number of concurrent schedule requests.
+     *
+     * @return the parallelism limit.
+     */
+    public int getParallelism(){
+        return parallelism;
+    }
+
+    /**
+     * Reads the channel list and the schedules of all channels, returns the
+     * channels as a list of channels. The schedules of all channels are
+     * fetched concurrently.
+     *
+     * @return A list of channels, or null if the channel list could not be
+     *         read.
+     */
+    public ArrayList<Channel> getChannels(){
+        ArrayList<Channel> channels = getChannelList();
+        if (channels == null){
             return null;
         }
 
+        List<String> dates = Arrays.asList(getDate(-1), getDate(0),
+                getDate(1));
+        Map<Channel, List<String>> requests = new LinkedHashMap<>();
+        for (Channel channel: channels){
+            requests.put(channel, dates);
+        }
+        fetchSchedules(requests);
+
+        for (Channel channel: channels){
+            channel.rebuildSchedule();
+        }
+
         return channels;
     }
 
     /**
-     * Creates a XMLParserFactory which reads a XML file for a schedule for a
-     * radio channel.
+     * Reads a XML file over radio channels, returns the channels as a list
+     * of channels without schedules. The request is retried as described in
+     * getSchedule, within the refresh budget of the fetch policy.
      *
-     * @param id The id number of the channel.
-     * @return A schedule as a list of programs for the channel.
+     * @return A list of channels, or null if the list could not be read.
      */
-    private ArrayList<Program> getSchedule(int id){
-        ArrayList<Program> schedule;
+    public ArrayList<Channel> getChannelList(){
+        ArrayList<Channel> channels;
 
-        SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
         try{
-            SAXParser saxParser = saxParserFactory.newSAXParser();
-            ProgramHandler handler = new ProgramHandler();
-            InputStream input = new URL("https://api.sr.se/v2/" +
-                    "scheduledepisodes?channelid="+id+"&pagination=false")
-                    .openStream();
-
-            saxParser.parse(input, handler);
-
-            schedule = handler.getShortSchedule();
+            channels = new Request<>(baseURL+"/channels?pagination=false",
+                    "channels", 0, null, null, policy.newDeadline(),
+                    Metrics.CHANNELS_REQUEST,
+                    (body, eTag, lastModified) -> parseChannels(body))
+                    .fetch().value;
 
-        }catch (ParserConfigurationException | SAXException | IOException e) {
+        }catch (IOException e) {
+            Metrics.failure();
             e.printStackTrace();
             return null;
         }
 
-        return joinSchedules(id, schedule);
+        return channels != null ? channels : new ArrayList<>();
     }
 
     /**
-     * Creates and returns a date string in the format "yyyy/mm/dd" of
-     * yesterdays date.
+     * Fetches the given days of the schedules of the given channels
+     * concurrently, using at most as many threads as the parallelism limit,
+     * and stores every fetched day in its channel. The days of a channel
+     * are fetched with one request for the range from its first to its last
+     * date. All requests share the refresh budget of the fetch policy, and
+     * days whose request fails or misses the budget keep their previous
+     * schedules.
      *
-     * @return yesterdays date.
+     * @param requests the consecutive dates, in the format "yyyy/mm/dd" and
+     *                 in date order, to fetch for each channel.
      */
-    private String getYesterdaysDate(){
-        SimpleDateFormat destFormat = new SimpleDateFormat("yyyy/MM/dd");
-        Date yesterdaysDate;
+    public void fetchSchedules(Map<Channel, List<String>> requests){
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        long cycle = RefreshTrace.cycle();
+        long deadline = policy.newDeadline();
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (Map.Entry<Channel, List<String>> request:
+                    requests.entrySet()){
+                Channel channel = request.getKey();
+                List<String> dates = request.getValue();
+                if (dates.isEmpty()){
+                    continue;
+                }
+                pending.add(executor.submit(() -> {
+                    RefreshTrace.enter(cycle, channel.getId());
+                    try {
+                        Schedule schedule = getSchedule(channel.getId(),
+                                dates.get(0), dates.get(dates.size() - 1),
+                                deadline);
+                        if (schedule != null){
+                            channel.setDaySchedules(dates, schedule);
+                        }
+                    } finally {
+                        RefreshTrace.exit();
+                    }
+                }));
+            }
 
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DATE, -1);
-        yesterdaysDate=cal.getTime();
+            for (Future<?> request: pending){
+                try {
+                    request.get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        return destFormat.format(yesterdaysDate);
+    /**
+     * Reads a XML file for a schedule for a radio channel, within the
+     * refresh budget of the fetch policy.
+     *
+     * @param id The id number of the channel.
+     * @param date The date of the schedule in the format "yyyy/mm/dd".
+     * @return The complete schedule of the day as a list of programs for
+     *         the channel, or null if the schedule could not be read.
+     */
+    public Schedule getSchedule(int id, String date){
+        return getSchedule(id, date, policy.newDeadline());
     }
 
     /**
-     * Creates and returns a date string in the format "yyyy/mm/dd" of
-     * tomorrows date.
+     * Reads a XML file for a schedule for a radio channel, as described in
+     * getSchedule for a range of days.
      *
-     * @return tomorrows date.
+     * @param id The id number of the channel.
+     * @param date The date of the schedule in the format "yyyy/mm/dd".
+     * @param deadline the time given by System.nanoTime() when the request
+     *                 must have been answered.
+     * @return The complete schedule of the day as a list of programs for
+     *         the channel, or null if the schedule could not be read before
+     *         the deadline.
      */
-    private String getTomorrowsDate(){
-        SimpleDateFormat destFormat = new SimpleDateFormat("yyyy/MM/dd");
-        Date tomorrowsDate;
+    public Schedule getSchedule(int id, String date, long deadline){
+        return getSchedule(id, date, date, deadline);
+    }
 
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DATE, 1);
-        tomorrowsDate=cal.getTime();
+    /**
+     * Reads a XML file for the schedule of a range of days for a radio
+     * channel, with one request using the fromdate and todate parameters
+     * of the API. The request is
+     * sent as a conditional request if the schedule is cached, and the
+     * cached schedule is reused if the server answers that it has not been
+     * modified. Requests that time out, fail to connect or are answered
+     * with a server error are retried after a jittered exponential delay,
+     * and a request that is slower than the hedge delay of the fetch policy
+     * is raced against a second identical request. Nothing is retried
+     * after the deadline. A schedule that is already being fetched by
+     * another thread is not requested again, its result is shared.
+     *
+     * @param id The id number of the channel.
+     * @param fromDate The first date of the schedule in the format
+     *                 "yyyy/mm/dd".
+     * @param toDate The last date of the schedule in the format
+     *               "yyyy/mm/dd", the same as fromDate for one day.
+     * @param deadline the time given by System.nanoTime() when the request
+     *                 must have been answered.
+     * @return The complete schedule of the days as a list of programs for
+     *         the channel, or null if the schedule could not be read before
+     *         the deadline.
+     */
+    public Schedule getSchedule(int id, String fromDate, String toDate,
+                                long deadline){
+        String range = fromDate.equals(toDate) ? fromDate :
+                fromDate+"-"+toDate;
+        String key = id+"/"+range;
+        CompletableFuture<Schedule> flight = new CompletableFuture<>();
+        CompletableFuture<Schedule> running = inFlight.putIfAbsent(key,
+                flight);
+        if (running != null){
+            Metrics.coalesced();
+            try {
+                return running.get(Math.max(1,
+                        FetchPolicy.remaining(deadline)),
+                        TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
 
-        return destFormat.format(tomorrowsDate);
+        try {
+            String query = fromDate.equals(toDate) ? "&date="+fromDate :
+                    "&fromdate="+fromDate+"&todate="+toDate;
+            Schedule schedule = fetchSchedule(id, range, query, deadline);
+            flight.complete(schedule);
+            return schedule;
+        } finally {
+            inFlight.remove(key, flight);
+            flight.complete(null);
+        }
     }
 
     /**
-     * Creates a XMLParserFactory which reads a XML file for a schedule for a
-     * radio channel. The schedule is for yesterdays schedule.
+     * Fetches and parses a schedule, as described in getSchedule.
      *
      * @param id The id number of the channel.
-     * @return A schedule as a list of yesterdays programs for the channel.
+     * @param range The date of the schedule in the format "yyyy/mm/dd", or
+     *              the first and last date separated by "-".
+     * @param query The date parameters of the request.
+     * @param deadline the time given by System.nanoTime() when the request
+     *                 must have been answered.
+     * @return The schedule, or null if it could not be read before the
+     *         deadline.
      */
-    private ArrayList<Program> getYesterdaysSchedule(int id){
-        ArrayList<Program> schedule;
+    private Schedule fetchSchedule(int id, String range, String query,
+                                   long deadline){
+        Schedule schedule;
 
-        SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
         try{
-            SAXParser saxParser = saxParserFactory.newSAXParser();
-            ProgramHandler handler = new ProgramHandler();
-            InputStream input = new URL("https://api.sr.se/v2/" +
-                    "scheduledepisodes?channelid="+id+"&pagination=false"+
-                    "&date="+getYesterdaysDate())
-                    .openStream();
+            ScheduleCache.Entry cached = cache.get(id, range);
+            Response<ParsedSchedule> response = new Request<>(baseURL+
+                    "/scheduledepisodes?channelid="+id+
+                    "&pagination=false"+query, "scheduledepisodes", id,
+                    range, cached, deadline, Metrics.SCHEDULE_REQUEST,
+                    this::readSchedule, ParsedSchedule::discard).fetch();
 
-            saxParser.parse(input, handler);
-
-            schedule = handler.getShortSchedule();
+            if (response.notModified){
+                Metrics.notModified();
+                schedule = cached.getSchedule();
+                if (schedule == null){
+                    try (InputStream input = cached.openBody()){
+                        schedule = parseSchedule(input);
+                    }
+                    cached.setSchedule(schedule);
+                }
+            }
+            else {
+                ParsedSchedule parsed = response.value;
+                cache.put(id, range, parsed.eTag, parsed.lastModified,
+                        parsed.file, parsed.schedule);
+                schedule = parsed.schedule;
+            }
 
-        }catch (ParserConfigurationException | SAXException | IOException e) {
+        }catch (IOException | RuntimeException e) {
+            Metrics.failure(id);
             e.printStackTrace();
             return null;
         }
@@ -144,62 +433,823 @@ public class XMLParserSAX {
     }
 
     /**
-     * Creates a XMLParserFactory which reads a XML file for a schedule for a
-     * radio channel. The schedule is for tomorrows schedule.
+     * Parses a schedule response body while it is being received. If the
+     * response carries a validator the body is copied to a new file in the
+     * cache directory as it is read, so that it can be parsed again after a
+     * later "not modified" response. Nothing is stored in the cache here:
+     * when requests are hedged both may read their bodies, and only the
+     * response that wins is stored by fetchSchedule.
      *
-     * @param id The id number of the channel.
-     * @return A schedule as a list of tomorrows programs for the channel.
+     * @param body the response body.
+     * @param eTag the ETag of the response, or null.
+     * @param lastModified the Last-Modified date of the response, or null.
+     * @return the complete schedule in the response, with its validators
+     *         and the copy of the body.
+     * @throws IOException if the response could not be read or parsed.
      */
-    private ArrayList<Program> getTomorrowsSchedule(int id){
-        ArrayList<Program> schedule;
+    private ParsedSchedule readSchedule(InputStream body, String eTag,
+                                        String lastModified)
+            throws IOException {
+        File file = eTag != null || lastModified != null ?
+                cache.newBodyFile() : null;
+        if (file == null){
+            return new ParsedSchedule(parseSchedule(body), eTag,
+                    lastModified, null);
+        }
 
-        SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-        try{
-            SAXParser saxParser = saxParserFactory.newSAXParser();
-            ProgramHandler handler = new ProgramHandler();
-            InputStream input = new URL("https://api.sr.se/v2/" +
-                    "scheduledepisodes?channelid="+id+"&pagination=false"+
-                    "&date="+getTomorrowsDate())
-                    .openStream();
+        Schedule schedule;
+        try (OutputStream copy = new FileOutputStream(file)){
+            schedule = parseSchedule(new TeeInputStream(body, copy));
+        } catch (IOException | RuntimeException e) {
+            if (!file.delete()){
+                System.err.println("Could not delete "+file);
+            }
+            throw e;
+        }
+        return new ParsedSchedule(schedule, eTag, lastModified, file);
+    }
 
-            saxParser.parse(input, handler);
+    /**
+     * Parses a channel list response with a new handler and the parser of
+     * the current thread, recording the processor time it takes.
+     *
+     * @param input the response body.
+     * @return the channels in the response.
+     * @throws IOException if the response could not be read or parsed.
+     */
+    private static ArrayList<Channel> parseChannels(InputStream input)
+            throws IOException {
+        ChannelHandler handler = new ChannelHandler();
+        long start = Metrics.cpuTime();
+        try {
+            getSAXParser().parse(input, handler);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new BodyException("Could not parse the channel list", e);
+        }
+        Metrics.CHANNELS_PARSE.record((Metrics.cpuTime() - start)/1000);
+        return handler.getChannelList();
+    }
 
-            schedule = handler.getShortSchedule();
+    /**
+     * Parses a schedule response with the parser and handler of the current
+     * thread, recording the processor time it takes.
+     *
+     * @param input the response body.
+     * @return the complete schedule in the response.
+     * @throws IOException if the response could not be read or parsed.
+     */
+    private Schedule parseSchedule(InputStream input) throws IOException {
+        ProgramHandler handler = PROGRAM_HANDLERS.get();
 
-        }catch (ParserConfigurationException | SAXException | IOException e) {
-            e.printStackTrace();
-            return null;
+        long start = Metrics.cpuTime();
+        try {
+            getSAXParser().parse(input, handler);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new BodyException("Could not parse the schedule", e);
         }
+        Metrics.SCHEDULE_PARSE.record((Metrics.cpuTime() - start)/1000);
 
-        return schedule;
+        ArrayList<Program> schedule = handler.getSchedule();
+        if (schedule == null){
+            return Schedule.EMPTY;
+        }
+        ModelEvent event = ModelEvent.isRecorded() ?
+                new ModelEvent("schedule") : null;
+        Schedule built = new Schedule(schedule);
+        if (event != null){
+            event.programs = built.size();
+            event.commit();
+        }
+        return built;
+    }
+
+    /**
+     * Returns the SAX parser of the current thread, creating it the first
+     * time. Parsers are not thread safe but can be reused after a reset, so
+     * every thread keeps its own.
+     *
+     * @return a parser ready for use.
+     * @throws ParserConfigurationException if no parser could be created.
+     * @throws SAXException if no parser could be created.
+     */
+    private static SAXParser getSAXParser()
+            throws ParserConfigurationException, SAXException {
+        SAXParser saxParser = SAX_PARSERS.get();
+        if (saxParser == null){
+            synchronized (SAX_PARSER_FACTORY){
+                saxParser = SAX_PARSER_FACTORY.newSAXParser();
+            }
+            SAX_PARSERS.set(saxParser);
+        }
+        else {
+            saxParser.reset();
+        }
+        return saxParser;
     }
 
     /**
-     * Joins nd returns yesterday's, today's and tomorrow's schedules to one
-     * complete schedule.
+     * Creates and returns a date string in the format "yyyy/mm/dd" of a date
+     * relative to today. Days are Swedish calendar days, as in the API.
      *
-     * @param id the id of the channel.
-     * @param todaysSchedule todays schedule.
-     * @return the joined schedule.
+     * @param days the number of days from today, negative for past days.
+     * @return the date.
      */
-    private ArrayList<Program> joinSchedules(int id,
-                                             ArrayList<Program> todaysSchedule){
-        ArrayList<Program> schedule = new ArrayList<>();
+    public static String getDate(int days){
+        SimpleDateFormat destFormat = new SimpleDateFormat("yyyy/MM/dd");
+        destFormat.setTimeZone(API_TIME_ZONE);
+
+        Calendar cal = Calendar.getInstance(API_TIME_ZONE);
+        cal.add(Calendar.DATE, days);
 
-        ArrayList<Program> temp;
+        return destFormat.format(cal.getTime());
+    }
 
-        temp = getYesterdaysSchedule(id);
-        if (temp != null) {
-            schedule.addAll(temp);
+    /**
+     * Returns the start of a day relative to a date given in the format
+     * "yyyy/mm/dd". Days start at midnight in Sweden, whatever the time
+     * zone of the system, since the API returns the programs of Swedish
+     * calendar days.
+     *
+     * @param date the date.
+     * @param days the number of days after the date, 0 for the date itself.
+     * @return the start of the day in milliseconds since the epoch.
+     * @throws IllegalArgumentException if the date is not in the format
+     *                                  "yyyy/mm/dd".
+     */
+    public static long getStartOfDay(String date, int days){
+        SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd");
+        format.setTimeZone(API_TIME_ZONE);
 
+        Calendar cal = Calendar.getInstance(API_TIME_ZONE);
+        try {
+            cal.setTime(format.parse(date));
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Not a date: "+date, e);
         }
-        schedule.addAll(todaysSchedule);
+        cal.add(Calendar.DATE, days);
 
-        temp = getTomorrowsSchedule(id);
-        if (temp != null) {
-            schedule.addAll(temp);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * A request to the API, sent again when it fails until it succeeds, the
+     * retries run out or the deadline passes. The body of a successful
+     * response is read by a body reader while it is being received.
+     *
+     * @param <T> the type read from the response body.
+     */
+    private class Request<T> {
+
+        private final String url;
+        private final String endpoint;
+        private final int channel;
+        private final String date;
+        private final ScheduleCache.Entry cached;
+        private final long deadline;
+        private final Histogram latency;
+        private final BodyReader<T> reader;
+        private final Consumer<T> discard;
+
+        /**
+         * Constructor of the class, for values that need no clean up when
+         * they are dropped.
+         *
+         * @param url the URL to request.
+         * @param endpoint the name of the endpoint, for the metrics.
+         * @param channel the id of the channel of the request, or 0.
+         * @param date the date of the request, or null.
+         * @param cached the cached response to validate, or null to send an
+         *               unconditional request.
+         * @param deadline the time given by System.nanoTime() when the
+         *                 request must have been answered.
+         * @param latency the histogram of the endpoint's request latency.
+         * @param reader reads the body of a successful response.
+         */
+        private Request(String url, String endpoint, int channel,
+                        String date, ScheduleCache.Entry cached,
+                        long deadline, Histogram latency,
+                        BodyReader<T> reader){
+            this(url, endpoint, channel, date, cached, deadline, latency,
+                    reader, value -> { });
         }
 
-        return schedule;
+        /**
+         * Constructor of the class.
+         *
+         * @param url the URL to request.
+         * @param endpoint the name of the endpoint, for the metrics.
+         * @param channel the id of the channel of the request, or 0.
+         * @param date the date of the request, or null.
+         * @param cached the cached response to validate, or null to send an
+         *               unconditional request.
+         * @param deadline the time given by System.nanoTime() when the
+         *                 request must have been answered.
+         * @param latency the histogram of the endpoint's request latency.
+         * @param reader reads the body of a successful response.
+         * @param discard cleans up the value of a response that lost a
+         *                hedge race and is dropped.
+         */
+        private Request(String url, String endpoint, int channel,
+                        String date, ScheduleCache.Entry cached,
+                        long deadline, Histogram latency,
+                        BodyReader<T> reader, Consumer<T> discard){
+            this.url = url;
+            this.endpoint = endpoint;
+            this.channel = channel;
+            this.date = date;
+            this.cached = cached;
+            this.deadline = deadline;
+            this.latency = latency;
+            this.reader = reader;
+            this.discard = discard;
+        }
+
+        /**
+         * Sends the request, retrying it after a jittered exponential delay
+         * while it fails with an error that may be temporary.
+         *
+         * @return the response.
+         * @throws IOException if the request failed on the last attempt, or
+         *                     the deadline passed.
+         */
+        private Response<T> fetch() throws IOException {
+            for (int retry = 0; ; retry++){
+                if (FetchPolicy.remaining(deadline) <= 0){
+                    Metrics.deadlineMissed();
+                    throw new SocketTimeoutException("Refresh budget " +
+                            "exceeded before "+url+" was fetched");
+                }
+                try {
+                    return hedge(retry);
+                } catch (IOException e) {
+                    long delay = policy.getRetryDelay(retry);
+                    if (retry >= policy.getRetries() || !isRetryable(e) ||
+                            FetchPolicy.remaining(deadline) <= delay){
+                        throw e;
+                    }
+                    Metrics.retried();
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted " +
+                                "while waiting to retry "+url);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sends the request once. If the fetch policy hedges requests and no
+         * response has arrived within the hedge delay, a second request is
+         * sent and the first successful response is used. The other
+         * request is then cancelled by closing its body, and if it still
+         * completes its value is discarded.
+         *
+         * @param attempt the number of the attempt, starting at 0.
+         * @return the response.
+         * @throws IOException if the request, or both requests, failed.
+         */
+        private Response<T> hedge(int attempt) throws IOException {
+            long delay = policy.getHedgeDelay();
+            if (delay <= 0 || FetchPolicy.remaining(deadline) <= delay){
+                return send(attempt, false, null);
+            }
+
+            long cycle = RefreshTrace.cycle();
+            Attempt firstAttempt = new Attempt();
+            CompletableFuture<Response<T>> first =
+                    sendAsync(attempt, false, firstAttempt, cycle);
+            try {
+                try {
+                    return first.get(delay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    Metrics.hedged();
+                    Attempt secondAttempt = new Attempt();
+                    CompletableFuture<Response<T>> second =
+                            sendAsync(attempt, true, secondAttempt, cycle);
+                    first.thenRun(secondAttempt::cancel);
+                    second.thenRun(firstAttempt::cancel);
+                    return firstSuccessful(first, second, this::discard)
+                            .get();
+                }
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while " +
+                        "waiting for "+url);
+            }
+        }
+
+        /**
+         * Discards the value of a response that lost a hedge race.
+         *
+         * @param response the response.
+         */
+        private void discard(Response<T> response){
+            if (response.value != null){
+                discard.accept(response.value);
+            }
+        }
+
+        /**
+         * Sends the request once on a thread of the hedge pool.
+         *
+         * @param attempt the number of the attempt, starting at 0.
+         * @param hedge true if the request is a hedge of a slow request.
+         * @param race cancels the request if the other request wins.
+         * @param cycle the refresh cycle to trace the request in.
+         * @return a future completed with the response.
+         */
+        private CompletableFuture<Response<T>> sendAsync(int attempt,
+                                                         boolean hedge,
+                                                         Attempt race,
+                                                         long cycle){
+            return CompletableFuture.supplyAsync(() -> {
+                RefreshTrace.enter(cycle, channel);
+                try {
+                    return send(attempt, hedge, race);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    RefreshTrace.exit();
+                }
+            }, HEDGES);
+        }
+
+        /**
+         * Sends the request once and reads the body of the response as it
+         * is received, decompressing it if the server compressed it. The
+         * headers must arrive within the read timeout, and the body must
+         * then be read within another read timeout, both shortened to the
+         * deadline. The connect and download phases are recorded as flight
+         * recorder events.
+         *
+         * @param attempt the number of the attempt, starting at 0.
+         * @param hedge true if the request is a hedge of a slow request.
+         * @param race cancels the request if the other request of a hedge
+         *             race wins, or null if the request is not raced.
+         * @return the response, without a value if the cached response was
+         *         not modified.
+         * @throws IOException if the request failed, was cancelled, was
+         *                     answered with an error or its body could not
+         *                     be read.
+         */
+        private Response<T> send(int attempt, boolean hedge, Attempt race)
+                throws IOException {
+            long start = System.nanoTime();
+            FetchEvent fetch = FetchEvent.start(endpoint, channel, date,
+                    "connect", attempt, hedge);
+            HttpRequest.Builder request = HttpRequest.newBuilder(
+                    URI.create(url))
+                    .timeout(Duration.ofMillis(
+                            policy.getReadTimeout(deadline)))
+                    .header("Accept-Encoding", "gzip, deflate");
+            if (cached != null){
+                if (cached.getETag() != null){
+                    request.header("If-None-Match", cached.getETag());
+                }
+                if (cached.getLastModified() != null){
+                    request.header("If-Modified-Since",
+                            cached.getLastModified());
+                }
+            }
+
+            HttpResponse<InputStream> response = null;
+            try {
+                response = client.send(request.build(),
+                        HttpResponse.BodyHandlers.ofInputStream());
+                if (race != null){
+                    race.setBody(response.body());
+                }
+                int status = response.statusCode();
+                FetchEvent.end(fetch, status, 0);
+                fetch = null;
+                latency.recordSince(start);
+
+                if (cached != null && status == NOT_MODIFIED){
+                    return new Response<>(true, null);
+                }
+                if (status >= BAD_REQUEST || status == NOT_MODIFIED){
+                    throw new StatusException(url, status);
+                }
+
+                fetch = FetchEvent.start(endpoint, channel, date,
+                        "download", attempt, hedge);
+                CountingInputStream body =
+                        new CountingInputStream(response.body());
+                T value = read(response, body);
+                FetchEvent.end(fetch, status, body.count);
+                fetch = null;
+                return new Response<>(false, value);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                FetchEvent.fail(fetch);
+                throw new InterruptedIOException("Interrupted while " +
+                        "waiting for "+url);
+            } catch (IOException | RuntimeException e) {
+                FetchEvent.fail(fetch);
+                throw e;
+            } finally {
+                if (response != null){
+                    response.body().close();
+                }
+            }
+        }
+
+        /**
+         * Reads the body of a successful response with the body reader. The
+         * body is closed by a watchdog if it has not been read within the
+         * read timeout, which makes the reader fail.
+         *
+         * @param response the response.
+         * @param body the body of the response, counting the bytes read.
+         * @return the value read from the body.
+         * @throws IOException if the body could not be read or parsed, or
+         *                     was not read in time.
+         */
+        private T read(HttpResponse<InputStream> response,
+                       CountingInputStream body) throws IOException {
+            ScheduledFuture<?> watchdog = WATCHDOG.schedule(() -> {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, policy.getReadTimeout(deadline), TimeUnit.MILLISECONDS);
+
+            try {
+                return reader.read(decode(body, response.headers()
+                                .firstValue("Content-Encoding").orElse(null)),
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified")
+                                .orElse(null));
+            } catch (IOException e) {
+                if (watchdog.isDone()){
+                    throw new SocketTimeoutException("Read timed out for "+
+                            url);
+                }
+                throw e;
+            } finally {
+                watchdog.cancel(false);
+                Metrics.bytesReceived(body.count);
+            }
+        }
+
+        /**
+         * Returns a stream that decompresses a response body in the given
+         * content encoding.
+         *
+         * @param body the body as received.
+         * @param encoding the Content-Encoding header, or null.
+         * @return the decompressed body.
+         * @throws IOException if the encoding is not supported or the body
+         *                     does not start with a valid header.
+         */
+        private InputStream decode(InputStream body, String encoding)
+                throws IOException {
+            if (encoding == null || encoding.equalsIgnoreCase("identity")){
+                return body;
+            }
+            if (encoding.equalsIgnoreCase("gzip") ||
+                    encoding.equalsIgnoreCase("x-gzip")){
+                return new GZIPInputStream(body);
+            }
+            if (encoding.equalsIgnoreCase("deflate")){
+                return new InflaterInputStream(body);
+            }
+            throw new BodyException("Unsupported content encoding "+
+                    encoding+" for URL: "+url, null);
+        }
+    }
+
+    /**
+     * Returns a future completed with the first of two responses that
+     * succeeds, or with the failure of the last one if both fail. A
+     * response that succeeds after the other one is discarded.
+     *
+     * @param first the first response.
+     * @param second the second response.
+     * @param discard discards the response that lost.
+     * @param <T> the type read from the response bodies.
+     * @return the future.
+     */
+    private static <T> CompletableFuture<Response<T>> firstSuccessful(
+            CompletableFuture<Response<T>> first,
+            CompletableFuture<Response<T>> second,
+            Consumer<Response<T>> discard){
+        CompletableFuture<Response<T>> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<Response<T>, Throwable> race = (response, failure) -> {
+            if (failure == null){
+                if (!winner.complete(response)){
+                    discard.accept(response);
+                }
+            }
+            else if (failures.incrementAndGet() == 2){
+                winner.completeExceptionally(failure);
+            }
+        };
+        first.whenComplete(race);
+        second.whenComplete(race);
+        return winner;
+    }
+
+    /**
+     * Returns whether a failed request may succeed if it is sent again:
+     * when it timed out, could not connect or was answered with a server
+     * error or "too many requests". A response whose body could not be
+     * parsed is not retried.
+     *
+     * @param e the failure.
+     * @return true if the request should be retried.
+     */
+    private static boolean isRetryable(IOException e){
+        if (e instanceof StatusException){
+            int status = ((StatusException) e).status;
+            return status >= INTERNAL_ERROR || status == TOO_MANY_REQUESTS;
+        }
+        if (e instanceof InterruptedIOException){
+            return e instanceof SocketTimeoutException;
+        }
+        return !(e instanceof BodyException);
+    }
+
+    /**
+     * Returns the IOException behind the failure of an asynchronous
+     * request.
+     *
+     * @param failure the failure.
+     * @return the exception to throw.
+     */
+    private static IOException unwrap(Throwable failure){
+        Throwable cause = failure;
+        while ((cause instanceof CompletionException ||
+                cause instanceof UncheckedIOException) &&
+                cause.getCause() != null){
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException){
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException){
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Reads the body of a response while it is being received.
+     *
+     * @param <T> the type read from the body.
+     */
+    private interface BodyReader<T> {
+
+        /**
+         * Reads a response body.
+         *
+         * @param body the decompressed body. Closed by the caller.
+         * @param eTag the ETag header of the response, or null.
+         * @param lastModified the Last-Modified header of the response, or
+         *                     null.
+         * @return the value read from the body.
+         * @throws IOException if the body could not be read or parsed.
+         */
+        T read(InputStream body, String eTag, String lastModified)
+                throws IOException;
+    }
+
+    /**
+     * A response of the API.
+     *
+     * @param <T> the type read from the response body.
+     */
+    private static class Response<T> {
+
+        private final boolean notModified;
+        private final T value;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param notModified true if the cached response was not modified.
+         * @param value the value read from the body, or null if the cached
+         *              response was not modified.
+         */
+        private Response(boolean notModified, T value){
+            this.notModified = notModified;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A schedule read from a response body, with the validators of the
+     * response and the copy of the body that the cache stores with them.
+     */
+    private static class ParsedSchedule {
+
+        private final Schedule schedule;
+        private final String eTag;
+        private final String lastModified;
+        private final File file;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param schedule the schedule.
+         * @param eTag the ETag of the response, or null.
+         * @param lastModified the Last-Modified date of the response, or
+         *                     null.
+         * @param file the copy of the body, or null.
+         */
+        private ParsedSchedule(Schedule schedule, String eTag,
+                               String lastModified, File file){
+            this.schedule = schedule;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.file = file;
+        }
+
+        /**
+         * Deletes the copy of the body of a response that is not stored.
+         */
+        private void discard(){
+            if (file != null && !file.delete()){
+                System.err.println("Could not delete "+file);
+            }
+        }
+    }
+
+    /**
+     * One of the two requests of a hedge race, which is cancelled by
+     * closing its response body when the other request wins. Closing the
+     * body makes the reading of it fail at once, instead of the request
+     * downloading and parsing a response that is dropped.
+     */
+    private static class Attempt {
+
+        private volatile boolean cancelled = false;
+        private volatile InputStream body;
+
+        /**
+         * Sets the body of the response of the request, closing it at once
+         * if the request has already been cancelled.
+         *
+         * @param body the response body.
+         * @throws IOException if the request has been cancelled.
+         */
+        private void setBody(InputStream body) throws IOException {
+            this.body = body;
+            if (cancelled){
+                body.close();
+                throw new InterruptedIOException("Hedged request cancelled");
+            }
+        }
+
+        /**
+         * Cancels the request, closing its response body if it has
+         * arrived.
+         */
+        private void cancel(){
+            cancelled = true;
+            InputStream received = body;
+            if (received != null){
+                try {
+                    received.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from a response body, before decompression.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param input the stream to count.
+         */
+        private CountingInputStream(InputStream input){
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0){
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0){
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Copies everything read from a stream to an output stream.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream copy;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param input the stream to read.
+         * @param copy the stream to copy what is read to.
+         */
+        private TeeInputStream(InputStream input, OutputStream copy){
+            super(input);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0){
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0){
+                copy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+    }
+
+    /**
+     * Thrown when a request is answered with an error status.
+     */
+    private static class StatusException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param url the URL of the request.
+         * @param status the status of the response.
+         */
+        private StatusException(String url, int status){
+            super("Server returned HTTP response code: "+status+
+                    " for URL: "+url);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Thrown when a response body can not be decompressed or parsed. The
+     * request is not retried, since the same body would be sent again.
+     */
+    private static class BodyException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor of the class.
+         *
+         * @param message the description of the failure.
+         * @param cause the failure, or null.
+         */
+        private BodyException(String message, Throwable cause){
+            super(message, cause);
+        }
     }
 }